@@ -0,0 +1,80 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for mining and hashing single blocks and rendering hashes.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BlockBench {
+    private final Block block = new Block(1, -150, Fixtures.fakeHash(0), 0, Fixtures.fakeHash(1));
+    private final Hash hash = Fixtures.fakeHash(42);
+    private final Hash sameHash = Fixtures.fakeHash(42);
+    private long nonce;
+    private int amount;
+
+    /**
+     * Mines a fresh block from scratch; each invocation uses a new amount so the
+     * nonce search differs.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 5)
+    public Block mineBlock() {
+        return new Block(1, amount++, hash);
+    }
+
+    /**
+     * Hashes the block header with one nonce.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Hash computeHash() {
+        return block.computeHash(nonce++);
+    }
+
+    /**
+     * Renders a 32-byte hash as hexadecimal.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String hashToString() {
+        return hash.toString();
+    }
+
+    /**
+     * Compares two distinct but equal hashes.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean hashEquals() {
+        return hash.equals(sameHash);
+    }
+
+    /**
+     * Renders a hash that has not been rendered before.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String freshHashToString() {
+        return new Hash(nonce, nonce++, 0, 0).toString();
+    }
+}
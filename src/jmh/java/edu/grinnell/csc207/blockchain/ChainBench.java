@@ -0,0 +1,131 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for whole-chain operations over chains of increasing length.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ChainBench {
+    @Param({"10", "1000", "100000", "1000000"})
+    private int chainLength;
+
+    private static final int BATCH_SIZE = 1000;
+
+    private BlockChain chain;
+    private Block next;
+    private List<Block> batch;
+
+    /**
+     * Builds the chain under test and the block appended to it.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        chain = Fixtures.chain(chainLength);
+        next = Fixtures.nextBlock(chain, chainLength, 1);
+        batch = new ArrayList<>();
+        Hash prev = chain.getHash();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            int num = chainLength + i;
+            Block blk = new Block(num, i % 2 == 0 ? 1 : -1, prev, num, Fixtures.fakeHash(num));
+            batch.add(blk);
+            prev = blk.getHash();
+        }
+    }
+
+    /**
+     * Appends a block to the tip and removes it again, leaving the chain unchanged.
+     */
+    @Benchmark
+    public boolean appendRemoveLast() {
+        chain.append(next);
+        return chain.removeLast();
+    }
+
+    /**
+     * Appends a batch of blocks one at a time, then removes them again.
+     */
+    @Benchmark
+    public int appendEachThenRemove() {
+        for (Block blk : batch) {
+            chain.append(blk);
+        }
+        return removeBatch();
+    }
+
+    /**
+     * Appends a batch of blocks in one call, then removes them again.
+     */
+    @Benchmark
+    public int appendAllThenRemove() {
+        chain.appendAll(batch);
+        return removeBatch();
+    }
+
+    /**
+     * Counts the blocks in the chain.
+     */
+    @Benchmark
+    public int getSize() {
+        return chain.getSize();
+    }
+
+    /**
+     * Validates the whole chain.
+     */
+    @Benchmark
+    public boolean isValidBlockChain() {
+        return chain.isValidBlockChain();
+    }
+
+    /**
+     * Computes the balances at the tip by replaying the chain.
+     */
+    @Benchmark
+    public int computeBalances() {
+        return chain.computeBalances().get(TransferBatch.ANNA);
+    }
+
+    /**
+     * Looks up the balances three quarters of the way up the chain through the balance
+     * history.
+     */
+    @Benchmark
+    public int[] balancesAt() {
+        return chain.getBalancesAt(chainLength * 3 / 4);
+    }
+
+    /**
+     * Renders the whole chain as a string.
+     */
+    @Benchmark
+    public String chainToString() {
+        return chain.toString();
+    }
+
+    private int removeBatch() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            chain.removeLast();
+        }
+        return chain.getSize();
+    }
+}
@@ -0,0 +1,75 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures streaming a chain out and back in with full verification. Blocks use
+ * difficulty 0 so real hashes can be built quickly and the reader's recomputation
+ * and checks still run on every block.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class CodecBench {
+    @Param({"100000", "1000000"})
+    private int chainLength;
+
+    private BlockChain chain;
+    private byte[] encoded;
+
+    /**
+     * Builds a chain of real difficulty-0 blocks and its encoding.
+     *
+     * @throws IOException never, the stream is in memory
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        chain = new BlockChain(new Block(0, Fixtures.INITIAL, null, 0, 0L));
+        for (int i = 1; i < chainLength; i++) {
+            chain.append(new Block(i, i % 2 == 1 ? -1 : 1, chain.getHash(), 0, 0L));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChainCodec.write(chain, out);
+        encoded = out.toByteArray();
+    }
+
+    /**
+     * Encodes the whole chain.
+     *
+     * @throws IOException never, the stream is in memory
+     */
+    @Benchmark
+    public int write() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length);
+        ChainCodec.write(chain, out);
+        return out.size();
+    }
+
+    /**
+     * Decodes and verifies the whole chain.
+     *
+     * @throws IOException if the encoding were invalid
+     */
+    @Benchmark
+    public BlockChain read() throws IOException {
+        return ChainCodec.read(new ByteArrayInputStream(encoded));
+    }
+}
@@ -0,0 +1,89 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a read-heavy mix of three readers and one writer, reading the tip, size and
+ * balances, on a ConcurrentBlockChain and on a BlockChain behind a global lock.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConcurrentBench {
+    private ConcurrentBlockChain concurrent;
+    private BlockChain locked;
+    private Block next;
+
+    /**
+     * Builds a chain of 1000 blocks for each variant and the block the writer adds.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        concurrent = new ConcurrentBlockChain(Fixtures.chain(1_000));
+        locked = Fixtures.chain(1_000);
+        next = Fixtures.nextBlock(locked, 1_000, 1);
+    }
+
+    /**
+     * Reads a consistent tip, size and balances from the latest snapshot.
+     */
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(3)
+    public int snapshotRead() {
+        ChainSnapshot snap = concurrent.snapshot();
+        return snap.getSize() + snap.getBalances()[0] + snap.getHash().hashCode();
+    }
+
+    /**
+     * Appends a block and removes it again, publishing two snapshots.
+     */
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(1)
+    public boolean snapshotWrite() {
+        concurrent.append(next);
+        return concurrent.removeLast();
+    }
+
+    /**
+     * Reads the tip, size and balances under the chain's lock.
+     */
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(3)
+    public int lockedRead() {
+        synchronized (locked) {
+            return locked.getSize() + locked.getBalances()[0] + locked.getHash().hashCode();
+        }
+    }
+
+    /**
+     * Appends a block and removes it again under the chain's lock.
+     */
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(1)
+    public boolean lockedWrite() {
+        synchronized (locked) {
+            locked.append(next);
+            return locked.removeLast();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package edu.grinnell.csc207.blockchain;
+
+/**
+ * Builds synthetic chains for the benchmarks.
+ *
+ * Mining a million blocks is not practical, so fixture blocks carry made-up hashes
+ * that satisfy Hash.isValid() and link correctly, which is all the chain operations
+ * look at.
+ */
+final class Fixtures {
+    static final int INITIAL = 1_000;
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns a valid chain with the given number of blocks, alternating transfers of
+     * 1 from Anna to Bob and back.
+     */
+    static BlockChain chain(int length) {
+        BlockChain chain = new BlockChain(new Block(0, INITIAL, null, 0, fakeHash(0)));
+        for (int i = 1; i < length; i++) {
+            chain.append(nextBlock(chain, i, i % 2 == 1 ? -1 : 1));
+        }
+        return chain;
+    }
+
+    /**
+     * Returns a block with the given number and amount that links to the chain's tip.
+     */
+    static Block nextBlock(BlockChain chain, int num, int amount) {
+        return new Block(num, amount, chain.getHash(), num, fakeHash(num));
+    }
+
+    /**
+     * Returns a distinct valid-looking hash for the given block number.
+     */
+    static Hash fakeHash(int num) {
+        byte[] data = new byte[32];
+        for (int i = 3; i < data.length; i++) {
+            data[i] = (byte) (num * 31 + i);
+        }
+        data[28] = (byte) (num >>> 24);
+        data[29] = (byte) (num >>> 16);
+        data[30] = (byte) (num >>> 8);
+        data[31] = (byte) num;
+        return new Hash(data);
+    }
+}
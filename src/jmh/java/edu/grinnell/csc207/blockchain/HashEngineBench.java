@@ -0,0 +1,121 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the JCA and specialized hash engines on one nonce of each header layout,
+ * against a baseline that builds a fresh digest and buffers for every nonce as mining
+ * once did. Run with -prof gc for bytes allocated per hash, and with -Djmh.args="HashEngineBench -jvmArgsAppend
+ * -XX:+UnlockDiagnosticVMOptions -jvmArgsAppend -XX:-UseSHA256Intrinsics" to see
+ * them on a JVM without SHA instructions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HashEngineBench {
+    @Param({"fresh", "jca", "specialized"})
+    private String engine;
+
+    @Param({"genesis", "linked", "transfers"})
+    private String layout;
+
+    private BlockHasher hasher;
+    private long nonce;
+
+    /**
+     * Makes a hasher for a header with no previous hash, with one, or with one and
+     * a body root.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Hash prev = layout.equals("genesis") ? null : Fixtures.fakeHash(1);
+        Hash body = layout.equals("transfers") ? Fixtures.fakeHash(2) : null;
+        if (engine.equals("fresh")) {
+            hasher = new FreshHasher(1, -150, prev, Hash.DEFAULT_DIFFICULTY, body);
+        } else {
+            HashEngine chosen = engine.equals("jca") ? HashEngine.JCA : HashEngine.SPECIALIZED;
+            hasher = chosen.newHasher(1, -150, prev, Hash.DEFAULT_DIFFICULTY, body);
+        }
+        Hash expected = HashEngine.JCA.newHasher(1, -150, prev, Hash.DEFAULT_DIFFICULTY, body).hash(7);
+        if (!hasher.hash(7).equals(expected)) {
+            throw new IllegalStateException(engine + " does not hash the header as the JCA engine does");
+        }
+    }
+
+    /**
+     * Checks one nonce against the difficulty, as mining does.
+     */
+    @Benchmark
+    public boolean isValidNonce() {
+        return hasher.isValidNonce(nonce++);
+    }
+
+    /**
+     * Computes the full hash of one nonce.
+     */
+    @Benchmark
+    public Hash hash() {
+        return hasher.hash(nonce++);
+    }
+
+    // Hashes every nonce from scratch, allocating a digest and field buffers each time.
+    private static final class FreshHasher implements BlockHasher {
+        private final int num;
+        private final int amount;
+        private final Hash prevHash;
+        private final int difficulty;
+        private final Hash body;
+
+        FreshHasher(int num, int amount, Hash prevHash, int difficulty, Hash body) {
+            this.num = num;
+            this.amount = amount;
+            this.prevHash = prevHash;
+            this.difficulty = difficulty;
+            this.body = body;
+        }
+
+        @Override
+        public boolean isValidNonce(long nonce) {
+            return hash(nonce).isValid(difficulty);
+        }
+
+        @Override
+        public Hash hash(long nonce) {
+            MessageDigest md;
+            try {
+                md = MessageDigest.getInstance("sha-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            md.update(ByteBuffer.allocate(4).putInt(num).array());
+            md.update(ByteBuffer.allocate(4).putInt(amount).array());
+            if (prevHash != null) {
+                md.update(prevHash.getData());
+            }
+            md.update(ByteBuffer.allocate(4).putInt(difficulty).array());
+            if (body != null) {
+                md.update(body.getData());
+            }
+            md.update(ByteBuffer.allocate(8).putLong(nonce).array());
+            return new Hash(md.digest());
+        }
+    }
+}
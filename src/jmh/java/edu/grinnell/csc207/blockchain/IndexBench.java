@@ -0,0 +1,65 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures lookup latency of the hash index for hits and misses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IndexBench {
+    @Param({"1000", "1000000"})
+    private int chainLength;
+
+    private BlockChain chain;
+    private Hash[] probes;
+    private Hash missing;
+    private int next;
+
+    /**
+     * Builds the chain and a shuffled set of hashes to look up.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        chain = Fixtures.chain(chainLength);
+        probes = new Hash[1 << 16];
+        for (int i = 0; i < probes.length; i++) {
+            // Copies, so lookups cannot succeed by reference alone.
+            Hash h = chain.getBlock((int) ((i * 2654435761L) % chainLength)).getHash();
+            probes[i] = new Hash(h.getData());
+        }
+        missing = Fixtures.fakeHash(-1);
+    }
+
+    /**
+     * Looks up the hash of a block spread across the chain.
+     */
+    @Benchmark
+    public Block findHit() {
+        return chain.findByHash(probes[next++ & (probes.length - 1)]);
+    }
+
+    /**
+     * Looks up a hash that is not in the chain.
+     */
+    @Benchmark
+    public boolean findMiss() {
+        return chain.containsHash(missing);
+    }
+}
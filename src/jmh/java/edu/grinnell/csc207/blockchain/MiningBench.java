@@ -0,0 +1,83 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures ParallelMiner's hash rate by thread count; the speedup is the ratio of
+ * each hashes score to the single-thread one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MiningBench {
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    @Param({"20"})
+    private int difficulty;
+
+    private ParallelMiner miner;
+    private int amount;
+
+    /**
+     * Counts the nonces tried, reported as hashes per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Hashes {
+        /** Nonces tried in the current iteration. */
+        public long hashes;
+
+        /**
+         * Starts each iteration from zero.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            hashes = 0;
+        }
+    }
+
+    /**
+     * Starts a miner with the requested number of threads.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        miner = new ParallelMiner(threads);
+    }
+
+    /**
+     * Stops the miner's threads.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        miner.close();
+    }
+
+    /**
+     * Mines a block; each invocation uses a new amount so the nonce search differs.
+     */
+    @Benchmark
+    public Block mine(Hashes counter) {
+        Block blk = new Block(1, amount++, null, difficulty, miner);
+        // Every nonce below the winning one is tried exactly once.
+        counter.hashes += blk.getNonce() + 1;
+        return blk;
+    }
+}
@@ -0,0 +1,106 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time per confirmed transfer of a BlockProducer fed by concurrent
+ * submitters, against mining and appending one transfer per block in sequence.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ProducerBench {
+    private static final int PIPELINED = 20_000;
+    private static final int SEQUENTIAL = 2_000;
+    private static final int SUBMITTERS = 4;
+
+    @Param({"12"})
+    private int difficulty;
+
+    @Param({"256"})
+    private int blockSize;
+
+    private BlockChain chain;
+
+    /**
+     * Starts each iteration from a fresh chain that can fund every transfer.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        chain = new BlockChain(PIPELINED, difficulty);
+    }
+
+    /**
+     * Submits transfers from several threads to a mempool drained by a producer and
+     * waits until all of them are confirmed.
+     *
+     * @throws InterruptedException if interrupted while waiting for the submitters
+     */
+    @Benchmark
+    @OperationsPerInvocation(PIPELINED)
+    public long pipelined() throws InterruptedException {
+        Mempool pool = new Mempool(chain, Mempool.Ordering.ARRIVAL, 4 * blockSize);
+        Thread[] threads = new Thread[SUBMITTERS];
+        CompletableFuture<?>[] last = new CompletableFuture<?>[SUBMITTERS];
+        try (BlockProducer producer = new BlockProducer(pool, blockSize)) {
+            for (int t = 0; t < SUBMITTERS; t++) {
+                int thread = t;
+                threads[t] = new Thread(() -> {
+                    for (int i = thread; i < PIPELINED; i += SUBMITTERS) {
+                        last[thread] = submit(pool, 2 + i % 1_000);
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+            CompletableFuture.allOf(last).join();
+            return producer.getTransactions();
+        }
+    }
+
+    /**
+     * Mines and appends one block per transfer on the calling thread.
+     */
+    @Benchmark
+    @OperationsPerInvocation(SEQUENTIAL)
+    public int sequential() {
+        Miner miner = new SequentialMiner();
+        for (int i = 0; i < SEQUENTIAL; i++) {
+            TransferBatch one = new TransferBatch(new int[]{TransferBatch.ANNA},
+                    new int[]{2 + i % 1_000}, new int[]{1});
+            chain.append(chain.mine(one, miner));
+        }
+        return chain.getSize();
+    }
+
+    // Submits a transfer of 1 from Anna, spinning while the pool is full.
+    private static CompletableFuture<Integer> submit(Mempool pool, int to) {
+        while (true) {
+            try {
+                return pool.submit(TransferBatch.ANNA, to, 1);
+            } catch (RejectedExecutionException e) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
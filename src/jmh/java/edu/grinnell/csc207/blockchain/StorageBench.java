@@ -0,0 +1,90 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares a BlockChain with a ColumnarBlockChain holding the same difficulty-0
+ * blocks: building the chain, validating it, and a full collection while it is live.
+ * Run with -prof gc for allocation per block and GC counts and times.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class StorageBench {
+    @Param({"objects", "columns"})
+    private String backend;
+
+    @Param({"100000", "1000000"})
+    private int chainLength;
+
+    private BlockChain objects;
+    private ColumnarBlockChain columns;
+
+    /**
+     * Builds the chain the validation and collection benchmarks hold.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (backend.equals("objects")) {
+            objects = buildObjects();
+        } else {
+            columns = buildColumns();
+        }
+    }
+
+    /**
+     * Mines and appends every block of a new chain.
+     */
+    @Benchmark
+    public Object build() {
+        return backend.equals("objects") ? buildObjects() : buildColumns();
+    }
+
+    /**
+     * Validates the whole chain.
+     */
+    @Benchmark
+    public boolean validate() {
+        return backend.equals("objects") ? objects.isValidBlockChain() : columns.isValidBlockChain();
+    }
+
+    /**
+     * Runs a full collection with the chain live.
+     */
+    @Benchmark
+    public int fullGc() {
+        System.gc();
+        return backend.equals("objects") ? objects.getSize() : columns.getSize();
+    }
+
+    private BlockChain buildObjects() {
+        BlockChain chain = new BlockChain(Fixtures.INITIAL, 0);
+        for (int i = 1; i < chainLength; i++) {
+            chain.append(chain.mine(i % 2 == 0 ? 1 : -1));
+        }
+        return chain;
+    }
+
+    private ColumnarBlockChain buildColumns() {
+        ColumnarBlockChain chain = new ColumnarBlockChain(Fixtures.INITIAL, 0);
+        for (int i = 1; i < chainLength; i++) {
+            chain.append(chain.mine(i % 2 == 0 ? 1 : -1));
+        }
+        return chain;
+    }
+}
@@ -0,0 +1,77 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long a fresh PeerNode takes to catch up on a long chain over loopback.
+ * Blocks use difficulty 0 so real hashes can be built quickly and the receiver's
+ * recomputation and checks still run on every block.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class SyncBench {
+    @Param({"10000", "200000"})
+    private int chainLength;
+
+    private BlockChain source;
+    private PeerNode server;
+
+    /**
+     * Builds a chain of real difficulty-0 blocks and starts a node serving it.
+     *
+     * @throws IOException if the node cannot listen
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        source = new BlockChain(new Block(0, Fixtures.INITIAL, null, 0, 0L));
+        for (int i = 1; i < chainLength; i++) {
+            source.append(new Block(i, i % 2 == 1 ? -1 : 1, source.getHash(), 0, 0L));
+        }
+        server = new PeerNode(source);
+    }
+
+    /**
+     * Stops the serving node.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    /**
+     * Connects a node holding only the genesis block and waits until it has the
+     * whole chain.
+     *
+     * @throws IOException          if the node cannot start or connect
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Benchmark
+    public int sync() throws IOException, InterruptedException {
+        try (PeerNode fresh = new PeerNode(new BlockChain(source.getBlock(0)))) {
+            fresh.connect(server.getAddress()).join();
+            if (!fresh.awaitHeight(chainLength, Duration.ofMinutes(5))) {
+                throw new IllegalStateException("Sync timed out at " + fresh.getHeight());
+            }
+            return fresh.getHeight();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of blocks carrying transfer batches of different sizes: applying
+ * and undoing one on the running balances, hashing its header, and proving one of
+ * its transfers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TransferBench {
+    private static final int ACCOUNTS = 10_000;
+
+    @Param({"1", "100", "1000"})
+    private int transfersPerBlock;
+
+    private BlockChain chain;
+    private Block candidate;
+    private int[] from;
+    private int[] to;
+    private int[] amounts;
+
+    /**
+     * Builds a chain whose second block funds many accounts, and a candidate block
+     * moving money between random pairs of them.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        chain = new BlockChain(new Block(0, ACCOUNTS * 1_000, null, 0, Fixtures.fakeHash(0)));
+        int[] payers = new int[ACCOUNTS];
+        int[] payees = new int[ACCOUNTS];
+        int[] funds = new int[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            payees[i] = i + 2;
+            funds[i] = 1_000;
+        }
+        chain.append(transferBlock(1, new TransferBatch(payers, payees, funds)));
+        Random random = new Random(42);
+        from = new int[transfersPerBlock];
+        to = new int[transfersPerBlock];
+        amounts = new int[transfersPerBlock];
+        for (int i = 0; i < transfersPerBlock; i++) {
+            from[i] = 2 + random.nextInt(ACCOUNTS);
+            to[i] = 2 + (from[i] - 1) % ACCOUNTS;
+            amounts[i] = 1;
+        }
+        candidate = transferBlock(2, new TransferBatch(from, to, amounts));
+    }
+
+    /**
+     * Appends the candidate block and removes it again.
+     */
+    @Benchmark
+    public boolean appendRemoveLast() {
+        chain.append(candidate);
+        return chain.removeLast();
+    }
+
+    /**
+     * Builds a batch from scratch and hashes a header committing to it.
+     */
+    @Benchmark
+    public Hash hashTransferBlock() {
+        TransferBatch batch = new TransferBatch(from, to, amounts);
+        return new Block(2, batch, chain.getHash(), 0, 0L).getHash();
+    }
+
+    /**
+     * Proves the middle transfer of the candidate block and checks the proof against
+     * its header.
+     */
+    @Benchmark
+    public boolean proveAndVerify() {
+        MerkleProof proof = candidate.getTransfers().prove(transfersPerBlock / 2);
+        return candidate.getHeader().includes(proof);
+    }
+
+    private Block transferBlock(int num, TransferBatch batch) {
+        return new Block(num, batch, chain.getHash(), Hash.DEFAULT_DIFFICULTY, num,
+                Fixtures.fakeHash(num));
+    }
+}
@@ -0,0 +1,71 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares sequential validation with fork/join validation by pool parallelism;
+ * the speedup is the ratio of the sequential score to each parallel score.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ValidationBench {
+    @Param({"100000", "1000000"})
+    private int chainLength;
+
+    @Param({"1", "2", "4", "8"})
+    private int parallelism;
+
+    private BlockChain chain;
+    private ForkJoinPool pool;
+
+    /**
+     * Builds the chain and a pool with the requested parallelism.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        chain = Fixtures.chain(chainLength);
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Shuts the pool down.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Validates the chain on the calling thread.
+     */
+    @Benchmark
+    public int sequential() {
+        return chain.firstInvalidBlock();
+    }
+
+    /**
+     * Validates the chain on the fork/join pool.
+     */
+    @Benchmark
+    public int parallel() {
+        return chain.firstInvalidBlock(pool);
+    }
+}
@@ -0,0 +1,117 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.Arrays;
+
+/**
+ * Anna's and Bob's balances after every K-th block, for answering balance queries at
+ * any height with at most K - 1 replayed blocks.
+ *
+ * Snapshot j holds the balances after block j * K in two int arrays, so the index
+ * costs 8 bytes per K blocks; a larger K saves memory and a smaller K makes queries
+ * faster. Snapshots are recorded as blocks are appended and dropped as they are
+ * removed.
+ */
+final class BalanceHistory {
+    private final int interval;
+    private int[] anna;
+    private int[] bob;
+    private int count;
+
+    /**
+     * Constructs a history holding only the balances after the genesis block.
+     *
+     * @param interval the number of blocks between snapshots, at least 1
+     * @param genesis  the genesis block
+     */
+    BalanceHistory(int interval, Block genesis) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("History interval must be positive.");
+        }
+        this.interval = interval;
+        anna = new int[16];
+        bob = new int[16];
+        anna[0] = genesis.getAmount();
+        count = 1;
+    }
+
+    /**
+     * Returns the number of blocks between snapshots.
+     *
+     * @return the interval K
+     */
+    int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Records the balances after the given block if it is due a snapshot. Blocks must
+     * be recorded in order.
+     *
+     * @param num  the number of the block just applied
+     * @param anna Anna's balance after it
+     * @param bob  Bob's balance after it
+     */
+    void record(int num, int anna, int bob) {
+        if (num % interval != 0) {
+            return;
+        }
+        if (count == this.anna.length) {
+            this.anna = Arrays.copyOf(this.anna, count * 2);
+            this.bob = Arrays.copyOf(this.bob, count * 2);
+        }
+        this.anna[count] = anna;
+        this.bob[count] = bob;
+        count++;
+    }
+
+    /**
+     * Drops the snapshots of blocks beyond a chain of the given size.
+     *
+     * @param size the number of blocks left in the chain
+     */
+    void truncate(int size) {
+        count = (size - 1) / interval + 1;
+    }
+
+    /**
+     * Returns Anna's and Bob's balances after the given block, replaying the blocks
+     * since the nearest snapshot at or below it.
+     *
+     * @param blocks the chain's blocks
+     * @param height the block number
+     * @return a new array holding Anna's and Bob's balances
+     */
+    int[] balancesAt(Block[] blocks, int height) {
+        int snapshot = height / interval;
+        int a = anna[snapshot];
+        int b = bob[snapshot];
+        for (int i = snapshot * interval + 1; i <= height; i++) {
+            a += delta(blocks[i], TransferBatch.ANNA);
+            b += delta(blocks[i], TransferBatch.BOB);
+        }
+        return new int[]{a, b};
+    }
+
+    /**
+     * Returns how much a valid block changes an account's balance.
+     *
+     * @param blk     the block
+     * @param account TransferBatch.ANNA or TransferBatch.BOB
+     * @return the net amount the account receives
+     */
+    static int delta(Block blk, int account) {
+        TransferBatch batch = blk.getTransfers();
+        if (batch == null) {
+            return account == TransferBatch.ANNA ? blk.getAmount() : -blk.getAmount();
+        }
+        int net = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.to(i) == account) {
+                net += batch.amount(i);
+            } else if (batch.from(i) == account) {
+                net -= batch.amount(i);
+            }
+        }
+        return net;
+    }
+}
@@ -0,0 +1,164 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.Arrays;
+
+/**
+ * Account balances in an open-addressing table of primitive ints.
+ *
+ * Accounts that were never touched have a balance of 0. Applying a block either
+ * applies all of its transfers or, if one is unaffordable, none of them, and undo
+ * reverses a previously applied block exactly.
+ */
+class BalanceTable {
+    private static final int EMPTY = Integer.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] accounts;
+    private int[] balances;
+    private int count;
+    // 32 minus log2 of the capacity: home slots are the hash's top bits.
+    private int shift = 32 - Integer.numberOfTrailingZeros(INITIAL_CAPACITY);
+
+    /**
+     * Constructs a table where every account has a balance of 0.
+     */
+    BalanceTable() {
+        accounts = new int[INITIAL_CAPACITY];
+        balances = new int[INITIAL_CAPACITY];
+        Arrays.fill(accounts, EMPTY);
+    }
+
+    /**
+     * Returns an account's balance.
+     *
+     * @param account the account number
+     * @return the balance, 0 for an unknown account
+     */
+    int get(int account) {
+        int slot = find(account);
+        return accounts[slot] == EMPTY ? 0 : balances[slot];
+    }
+
+    /**
+     * Adds delta to an account's balance.
+     *
+     * @param account the account number
+     * @param delta   the amount to add, possibly negative
+     */
+    void add(int account, int delta) {
+        int slot = find(account);
+        if (accounts[slot] == EMPTY) {
+            if (2 * (count + 1) > accounts.length) {
+                resize();
+                slot = find(account);
+            }
+            accounts[slot] = account;
+            count++;
+        }
+        balances[slot] += delta;
+    }
+
+    /**
+     * Applies a block's transfers if they are all affordable in order.
+     *
+     * @param blk the block to apply
+     * @return null if the block was applied, otherwise why it was not
+     */
+    String apply(Block blk) {
+        TransferBatch batch = blk.getTransfers();
+        if (batch == null) {
+            int amt = blk.getAmount();
+            if (amt < 0) { // Anna sends money to Bob.
+                if (get(TransferBatch.ANNA) < Math.abs(amt)) {
+                    return "Insufficient funds for Anna.";
+                }
+            } else if (amt > 0) { // Bob sends money to Anna.
+                if (get(TransferBatch.BOB) < amt) {
+                    return "Insufficient funds for Bob.";
+                }
+            }
+            move(TransferBatch.BOB, TransferBatch.ANNA, amt);
+            return null;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (get(batch.from(i)) < batch.amount(i)) {
+                undo(batch, i);
+                return "Transfer " + i + ": Insufficient funds for account " + batch.from(i) + ".";
+            }
+            move(batch.from(i), batch.to(i), batch.amount(i));
+        }
+        return null;
+    }
+
+    /**
+     * Reverses a block previously applied with apply.
+     *
+     * @param blk the block to undo
+     */
+    void undo(Block blk) {
+        TransferBatch batch = blk.getTransfers();
+        if (batch == null) {
+            move(TransferBatch.BOB, TransferBatch.ANNA, -blk.getAmount());
+        } else {
+            undo(batch, batch.size());
+        }
+    }
+
+    /**
+     * Returns true if both tables hold the same balance for every account.
+     *
+     * @param other the table to compare with
+     * @return true if the balances agree
+     */
+    boolean sameBalances(BalanceTable other) {
+        return covers(other) && other.covers(this);
+    }
+
+    // Reverses the first n transfers of the batch, last first.
+    private void undo(TransferBatch batch, int n) {
+        for (int i = n - 1; i >= 0; i--) {
+            move(batch.to(i), batch.from(i), batch.amount(i));
+        }
+    }
+
+    private void move(int payer, int payee, int amount) {
+        add(payer, -amount);
+        add(payee, amount);
+    }
+
+    // True if every account here has the same balance in other.
+    private boolean covers(BalanceTable other) {
+        for (int i = 0; i < accounts.length; i++) {
+            if (accounts[i] != EMPTY && other.get(accounts[i]) != balances[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns the slot holding the account, or the empty slot where it would go.
+    private int find(int account) {
+        int mask = accounts.length - 1;
+        int slot = account * 0x9E3779B9 >>> shift;
+        while (accounts[slot] != EMPTY && accounts[slot] != account) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        int[] oldAccounts = accounts;
+        int[] oldBalances = balances;
+        accounts = new int[oldAccounts.length * 2];
+        balances = new int[oldAccounts.length * 2];
+        shift--;
+        Arrays.fill(accounts, EMPTY);
+        for (int i = 0; i < oldAccounts.length; i++) {
+            if (oldAccounts[i] != EMPTY) {
+                int slot = find(oldAccounts[i]);
+                accounts[slot] = oldAccounts[i];
+                balances[slot] = oldBalances[i];
+            }
+        }
+    }
+}
@@ -1,19 +1,25 @@
 package edu.grinnell.csc207.blockchain;
 
-import java.nio.ByteBuffer;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-
 /**
  * A single block of a blockchain.
+ *
+ * Each block declares its difficulty, the number of leading zero bits its hash
+ * must have, and the difficulty is part of the hashed header. A block either moves
+ * its amount between Anna and Bob or carries a batch of transfers between numbered
+ * accounts, in which case its amount is 0 and the batch's Merkle root is hashed as
+ * well, so the header alone commits to every transfer.
  */
 public class Block {
-    // TODO: fill me in!
+    private static final Miner DEFAULT_MINER = new SequentialMiner();
+
     private int num;
     private int amount;
     private Hash prevHash;
+    private int difficulty;
+    private TransferBatch transfers;
     private long nonce;
     private Hash hash;
+    private long miningNanos;
 
     /**
      * Constructs a new Block by mining for a valid nonce.
@@ -23,10 +29,61 @@ public class Block {
      * @param prevHash the hash of the previous block (or null for start block)
      */
     public Block(int num, int amount, Hash prevHash){
+        this(num, amount, prevHash, DEFAULT_MINER);
+    }
+
+    /**
+     * Constructs a new Block by mining for a valid nonce with the given miner.
+     *
+     * @param num      the block number in the blockchain
+     * @param amount   the dollar amount transferred in this block
+     * @param prevHash the hash of the previous block (or null for start block)
+     * @param miner    the strategy used to search for the nonce
+     */
+    public Block(int num, int amount, Hash prevHash, Miner miner){
+        this(num, amount, prevHash, Hash.DEFAULT_DIFFICULTY, miner);
+    }
+
+    /**
+     * Constructs a new Block of the given difficulty by mining for a valid nonce with
+     * the given miner.
+     *
+     * @param num        the block number in the blockchain
+     * @param amount     the dollar amount transferred in this block
+     * @param prevHash   the hash of the previous block (or null for start block)
+     * @param difficulty the number of leading zero bits the hash must have
+     * @param miner      the strategy used to search for the nonce
+     */
+    public Block(int num, int amount, Hash prevHash, int difficulty, Miner miner){
+        this(num, amount, null, prevHash, difficulty, miner);
+    }
+
+    /**
+     * Constructs a new Block carrying a batch of transfers by mining for a valid nonce
+     * with the given miner.
+     *
+     * @param num        the block number in the blockchain
+     * @param transfers  the transfers recorded in this block
+     * @param prevHash   the hash of the previous block (or null for start block)
+     * @param difficulty the number of leading zero bits the hash must have
+     * @param miner      the strategy used to search for the nonce
+     */
+    public Block(int num, TransferBatch transfers, Hash prevHash, int difficulty, Miner miner){
+        this(num, 0, checkTransfers(transfers), prevHash, difficulty, miner);
+    }
+
+    private Block(int num, int amount, TransferBatch transfers, Hash prevHash, int difficulty,
+            Miner miner){
         this.num = num;
         this.amount = amount;
+        this.transfers = transfers;
         this.prevHash = prevHash;
-        mineBlock();
+        this.difficulty = checkDifficulty(difficulty);
+        long start = System.nanoTime();
+        this.nonce = miner.findNonce(this);
+        this.miningNanos = System.nanoTime() - start;
+        Metrics.mined(miningNanos);
+        this.hash = computeHash(nonce);
     }
 
     /**
@@ -38,13 +95,99 @@ public class Block {
      * @param nonce    the nonce value to use (no mining performed)
      */
     public Block(int num, int amount, Hash prevHash, long nonce){
+        this(num, amount, prevHash, Hash.DEFAULT_DIFFICULTY, nonce);
+    }
+
+    /**
+     * Constructs a new Block of the given difficulty using a provided nonce.
+     *
+     * @param num        the block number
+     * @param amount     the dollar amount transferred
+     * @param prevHash   the previous block’s hash
+     * @param difficulty the number of leading zero bits the hash must have
+     * @param nonce      the nonce value to use (no mining performed)
+     */
+    public Block(int num, int amount, Hash prevHash, int difficulty, long nonce){
         this.num = num;
         this.amount = amount;
         this.prevHash = prevHash;
+        this.difficulty = checkDifficulty(difficulty);
+        this.nonce = nonce;
+        this.hash = computeHash(nonce);
+    }
+
+    /**
+     * Constructs a new Block carrying a batch of transfers using a provided nonce.
+     *
+     * @param num        the block number
+     * @param transfers  the transfers recorded in this block
+     * @param prevHash   the previous block’s hash
+     * @param difficulty the number of leading zero bits the hash must have
+     * @param nonce      the nonce value to use (no mining performed)
+     */
+    public Block(int num, TransferBatch transfers, Hash prevHash, int difficulty, long nonce){
+        this.num = num;
+        this.transfers = checkTransfers(transfers);
+        this.prevHash = prevHash;
+        this.difficulty = checkDifficulty(difficulty);
         this.nonce = nonce;
         this.hash = computeHash(nonce);
     }
 
+    /**
+     * Constructs a Block whose nonce and hash were already computed, for example when
+     * restoring blocks from storage. The hash is trusted and not recomputed.
+     *
+     * @param num      the block number
+     * @param amount   the dollar amount transferred
+     * @param prevHash the previous block’s hash
+     * @param nonce    the block's nonce
+     * @param hash     the block's hash
+     */
+    Block(int num, int amount, Hash prevHash, long nonce, Hash hash){
+        this(num, amount, prevHash, Hash.DEFAULT_DIFFICULTY, nonce, hash);
+    }
+
+    /**
+     * Constructs a Block of the given difficulty whose nonce and hash were already
+     * computed. The hash is trusted and not recomputed.
+     *
+     * @param num        the block number
+     * @param amount     the dollar amount transferred
+     * @param prevHash   the previous block’s hash
+     * @param difficulty the number of leading zero bits the hash must have
+     * @param nonce      the block's nonce
+     * @param hash       the block's hash
+     */
+    Block(int num, int amount, Hash prevHash, int difficulty, long nonce, Hash hash){
+        this.num = num;
+        this.amount = amount;
+        this.prevHash = prevHash;
+        this.difficulty = checkDifficulty(difficulty);
+        this.nonce = nonce;
+        this.hash = hash;
+    }
+
+    /**
+     * Constructs a Block carrying a batch of transfers whose nonce and hash were
+     * already computed. The hash is trusted and not recomputed.
+     *
+     * @param num        the block number
+     * @param transfers  the transfers recorded in this block
+     * @param prevHash   the previous block’s hash
+     * @param difficulty the number of leading zero bits the hash must have
+     * @param nonce      the block's nonce
+     * @param hash       the block's hash
+     */
+    Block(int num, TransferBatch transfers, Hash prevHash, int difficulty, long nonce, Hash hash){
+        this.num = num;
+        this.transfers = checkTransfers(transfers);
+        this.prevHash = prevHash;
+        this.difficulty = checkDifficulty(difficulty);
+        this.nonce = nonce;
+        this.hash = hash;
+    }
+
     /**
      * Returns the number of the block in the blockchain.
      *
@@ -61,6 +204,62 @@ public class Block {
     public int getAmount(){
         return amount;
     }
+    /**
+     * Returns the batch of transfers this block records, or null if it moves its
+     * amount between Anna and Bob.
+     *
+     * @return the block's transfers, or null
+     */
+    public TransferBatch getTransfers(){
+        return transfers;
+    }
+
+    /**
+     * Returns the Merkle root of this block's transfers, or null if it has none.
+     *
+     * @return the body root, or null
+     */
+    public Hash getBodyRoot(){
+        return transfers == null ? null : transfers.merkleRoot();
+    }
+
+    /**
+     * Returns this block's header, which holds everything hashed except the transfers
+     * themselves.
+     *
+     * @return the block header
+     */
+    public BlockHeader getHeader(){
+        return new BlockHeader(num, amount, prevHash, difficulty, getBodyRoot(), nonce, hash);
+    }
+
+    /**
+     * Returns the number of leading zero bits this block's hash must have.
+     *
+     * @return the block's difficulty
+     */
+    public int getDifficulty(){
+        return difficulty;
+    }
+
+    /**
+     * Returns how long mining this block took, or 0 if it was not mined here.
+     *
+     * @return the mining time in nanoseconds
+     */
+    public long getMiningNanos(){
+        return miningNanos;
+    }
+
+    /**
+     * Returns true if this block's hash meets its declared difficulty.
+     *
+     * @return true if the hash is valid for this block
+     */
+    public boolean hasValidHash(){
+        return hash.isValid(difficulty);
+    }
+
     /**
      * Returns the nonce value.
      *
@@ -91,44 +290,41 @@ public class Block {
      *
      * Format: 
      * Block <num> (Amount: <amt>, Nonce: <nonce>, prevHash: <prevHash>, hash: <hash>)
+     * or, for a block carrying transfers,
+     * Block <num> (Transfers: <count>, Nonce: <nonce>, prevHash: <prevHash>, hash: <hash>)
      */
     public String toString(){
+        if (transfers != null) {
+            return String.format("Block %d (Transfers: %d, Nonce: %d, prevHash: %s, hash: %s)",
+                    num, transfers.size(), nonce, (prevHash == null ? "null" : prevHash.toString()),
+                    hash.toString());
+        }
         return String.format("Block %d (Amount: %d, Nonce: %d, prevHash: %s, hash: %s)",
                 num, amount, nonce, (prevHash == null ? "null" : prevHash.toString()), hash.toString());
     }
 
-    // Mines for a valid nonce by iterating from 0 until a hash meets the validity criteria.
-    private void mineBlock() {
-        long candidate = 0;
-        while (true) {
-            Hash candidateHash = computeHash(candidate);
-            if (candidateHash.isValid()) {
-                this.nonce = candidate;
-                this.hash = candidateHash;
-                break;
-            }
-            candidate++;
+    // Returns a hasher for this block's header, for trying many nonces without allocating.
+    BlockHasher newHasher() {
+        return HashEngine.DEFAULT.newHasher(num, amount, prevHash, difficulty, getBodyRoot());
+    }
+
+    // Computes the block's hash using its number, amount, previous hash (if any), difficulty,
+    // body root (if any), and a given nonce.
+    Hash computeHash(long nonceValue) {
+        return newHasher().hash(nonceValue);
+    }
+
+    private static TransferBatch checkTransfers(TransferBatch transfers) {
+        if (transfers == null) {
+            throw new IllegalArgumentException("A transfer block needs a batch of transfers.");
         }
+        return transfers;
     }
 
-    // Computes the block's hash using its number, amount, previous hash (if any), and a given nonce.
-    private Hash computeHash(long nonceValue) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("sha-256");
-            // Add block number
-            md.update(ByteBuffer.allocate(4).putInt(num).array());
-            // Add amount
-            md.update(ByteBuffer.allocate(4).putInt(amount).array());
-            // Add previous hash bytes if exists 
-            if (prevHash != null) {
-                md.update(prevHash.getData());
-            }
-            // Add nonce
-            md.update(ByteBuffer.allocate(8).putLong(nonceValue).array());
-            byte[] hashBytes = md.digest();
-            return new Hash(hashBytes);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not found", e);
+    private static int checkDifficulty(int difficulty) {
+        if (difficulty < 0 || difficulty > Hash.MAX_DIFFICULTY) {
+            throw new IllegalArgumentException("Difficulty must be between 0 and 256 bits.");
         }
+        return difficulty;
     }
 }
@@ -1,23 +1,46 @@
 package edu.grinnell.csc207.blockchain;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
 /**
- * A linked list of hash-consistent blocks representing a ledger of
- * monetary transactions.
+ * A growable array of hash-consistent blocks representing a ledger of
+ * monetary transactions. Block i of the chain is stored at index i.
+ *
+ * A block either moves its amount between Anna and Bob, or records a batch of
+ * transfers between numbered accounts, Anna's being account 0 and Bob's account 1.
+ *
+ * Every block must meet its declared difficulty, which may not be lower than the
+ * chain's minimum difficulty: the genesis block's, or the retargeting policy's
+ * minimum if that is lower.
  */
 public class BlockChain {
-    private Node first;
-    private Node last;
-
-    // Nested Node class for the linked list structure.
-    private class Node {
-        Block block;
-        Node next;
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * The default number of blocks between balance history snapshots.
+     */
+    public static final int DEFAULT_HISTORY_INTERVAL = 64;
+    private static final String STORE_TRANSFERS = "A stored chain cannot hold transfer blocks.";
 
-        Node(Block block) {
-            this.block = block;
-            this.next = null;
-        }
-    }
+    private Block[] blocks;
+    private int size;
+    // Running balances at the tip, kept in step with append and removeLast.
+    private BalanceTable balances = new BalanceTable();
+    // Number of blocks carrying transfer batches.
+    private int transferBlocks;
+    // Anna's and Bob's balances every few blocks, kept in step with append and removeLast.
+    private BalanceHistory history;
+    // Optional persistent copy of the chain, written through on append and removeLast.
+    private BlockStore store;
+    private int minDifficulty;
+    private Retargeting retargeting;
+    // Block numbers by hash, kept in step with the array.
+    private final HashIndex hashIndex = new HashIndex();
 
     /**
      * Constructs a blockchain with a single genesis block.
@@ -26,9 +49,96 @@ public class BlockChain {
      * @param initial the initial non-negative amount
      */
     public BlockChain(int initial) {
-        Block start = new Block(0, initial, null);
-        first = new Node(start);
-        last = first;
+        this(new Block(0, initial, null));
+    }
+
+    /**
+     * Constructs a blockchain with a single genesis block of the given difficulty,
+     * which also becomes the chain's minimum difficulty.
+     *
+     * @param initial    the initial non-negative amount
+     * @param difficulty the number of leading zero bits block hashes must have
+     */
+    public BlockChain(int initial, int difficulty) {
+        this(new Block(0, initial, null, difficulty, new SequentialMiner()));
+    }
+
+    /**
+     * Constructs a blockchain starting from an existing genesis block.
+     *
+     * @param start the genesis block
+     */
+    BlockChain(Block start) {
+        if (start.getTransfers() != null) {
+            throw new IllegalArgumentException("The genesis block cannot carry transfers.");
+        }
+        blocks = new Block[INITIAL_CAPACITY];
+        blocks[0] = start;
+        size = 1;
+        hashIndex.add(start.getHash(), 0);
+        balances.add(TransferBatch.ANNA, start.getAmount());
+        history = new BalanceHistory(DEFAULT_HISTORY_INTERVAL, start);
+        minDifficulty = start.getDifficulty();
+    }
+
+    /**
+     * Opens a blockchain persisted in the given store, fully verifying every stored
+     * block. Same as open(store, initial, null).
+     *
+     * @param store   the store holding the chain
+     * @param initial the initial non-negative amount for a new chain
+     * @return the opened blockchain
+     * @throws IOException if the genesis block cannot be stored
+     */
+    public static BlockChain open(BlockStore store, int initial) throws IOException {
+        return open(store, initial, null);
+    }
+
+    /**
+     * Opens a blockchain persisted in the given store. If the store is empty a new
+     * genesis block with the initial amount is mined and stored; otherwise the
+     * initial amount is ignored. If the checkpoint matches the store, the blocks it
+     * covers and its balances are trusted as stored, and only later blocks are
+     * verified; otherwise every block is verified. Verifying a block recomputes its
+     * hash and applies the same checks as append. Later appends and removals are
+     * written through to the store.
+     *
+     * @param store      the store holding the chain
+     * @param initial    the initial non-negative amount for a new chain
+     * @param checkpoint the latest checkpoint of the chain, or null
+     * @return the opened blockchain
+     * @throws IOException if the genesis block cannot be stored
+     */
+    public static BlockChain open(BlockStore store, int initial, Checkpoint checkpoint)
+            throws IOException {
+        BlockChain chain;
+        if (store.size() == 0) {
+            chain = new BlockChain(initial);
+            store.append(chain.blocks[0]);
+            chain.store = store;
+            return chain;
+        }
+        int trusted;
+        if (checkpoint != null && checkpoint.matches(store)) {
+            trusted = checkpoint.getHeight();
+            chain = new BlockChain(store.read(0));
+            for (int i = 1; i < trusted; i++) {
+                chain.push(store.read(i));
+            }
+            chain.balances = new BalanceTable();
+            chain.balances.add(TransferBatch.ANNA, checkpoint.getAnna());
+            chain.balances.add(TransferBatch.BOB, checkpoint.getBob());
+            chain.setHistoryInterval(DEFAULT_HISTORY_INTERVAL);
+            assert chain.balancesMatchReplay() : "Checkpoint balances do not match its blocks";
+        } else {
+            trusted = 1;
+            chain = new BlockChain(verified(store.read(0)));
+        }
+        for (int i = trusted; i < store.size(); i++) {
+            chain.append(verified(store.read(i)));
+        }
+        chain.store = store;
+        return chain;
     }
 
     /**
@@ -37,11 +147,56 @@ public class BlockChain {
      * @return the size of the chain
      */
     public int getSize() {
-        int count = 0;
-        for (Node curr = first; curr != null; curr = curr.next) {
-            count++;
+        return size;
+    }
+
+    /**
+     * Returns the block with the given number.
+     *
+     * @param num the block number, from 0 (the genesis block) to getSize() - 1
+     * @return the block at that position
+     */
+    public Block getBlock(int num) {
+        if (num < 0 || num >= size) {
+            throw new IndexOutOfBoundsException("No block " + num + " in a chain of " + size);
+        }
+        return blocks[num];
+    }
+
+    /**
+     * Returns the block with the given hash, or null if no block of the chain has it.
+     * Runs in expected constant time using the chain's hash index.
+     *
+     * @param hash the hash to look for
+     * @return the block with that hash, or null
+     */
+    public Block findByHash(Hash hash) {
+        int num = hashIndex.find(hash, blocks);
+        return num < 0 ? null : blocks[num];
+    }
+
+    /**
+     * Returns the headers of every block, genesis first, for checking the chain's links
+     * and proof of work with BlockHeader.firstInvalidHeader.
+     *
+     * @return a new list of the chain's block headers
+     */
+    public List<BlockHeader> getHeaders() {
+        List<BlockHeader> headers = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            headers.add(blocks[i].getHeader());
         }
-        return count;
+        return headers;
+    }
+
+    /**
+     * Returns true if some block of the chain has the given hash.
+     *
+     * @param hash the hash to look for
+     * @return true if the hash is in the chain
+     */
+    public boolean containsHash(Hash hash) {
+        return hashIndex.find(hash, blocks) >= 0;
     }
 
     /**
@@ -53,10 +208,74 @@ public class BlockChain {
      */
     public Block mine(int amount) {
         int newBlockNum = getSize();
-        Block candidate = new Block(newBlockNum, amount, last.block.getHash());
+        Block candidate = new Block(newBlockNum, amount, last().getHash(), nextDifficulty(),
+                new SequentialMiner());
         return candidate;
     }
 
+    /**
+     * Mines a new candidate block for a given transaction amount using the given miner.
+     * Does not append the block to the chain.
+     *
+     * @param amount the transaction amount
+     * @param miner  the strategy used to search for the nonce
+     * @return the mined block
+     */
+    public Block mine(int amount, Miner miner) {
+        return new Block(getSize(), amount, last().getHash(), nextDifficulty(), miner);
+    }
+
+    /**
+     * Mines a new candidate block recording the given transfers using the given miner.
+     * Does not append the block to the chain.
+     *
+     * @param transfers the transfers to record
+     * @param miner     the strategy used to search for the nonce
+     * @return the mined block
+     */
+    public Block mine(TransferBatch transfers, Miner miner) {
+        return new Block(getSize(), transfers, last().getHash(), nextDifficulty(), miner);
+    }
+
+    /**
+     * Returns the difficulty the next block should be mined at: the retargeting
+     * policy's choice if there is one, otherwise the difficulty of the last block.
+     *
+     * @return the next block's difficulty
+     */
+    public int nextDifficulty() {
+        return retargeting == null ? last().getDifficulty() : retargeting.nextDifficulty(this);
+    }
+
+    /**
+     * Sets the policy used to adjust the difficulty of newly mined blocks, or null to
+     * keep the last block's difficulty. The chain's minimum difficulty becomes the
+     * lower of the genesis block's difficulty and the policy's minimum.
+     *
+     * @param policy the retargeting policy, or null
+     */
+    public void setRetargeting(Retargeting policy) {
+        retargeting = policy;
+        minDifficulty = blocks[0].getDifficulty();
+        if (policy != null) {
+            minDifficulty = Math.min(minDifficulty, policy.getMinDifficulty());
+        }
+    }
+
+    // Sets the minimum difficulty directly, for chains restored from a stream.
+    void setMinDifficulty(int difficulty) {
+        minDifficulty = difficulty;
+    }
+
+    /**
+     * Returns the lowest difficulty a block of this chain may declare.
+     *
+     * @return the minimum difficulty
+     */
+    public int getMinDifficulty() {
+        return minDifficulty;
+    }
+
     /**
      * Appends a new block to the chain.
      * Throws IllegalArgumentException if the block is not valid with respect to the chain.
@@ -64,30 +283,108 @@ public class BlockChain {
      * @param blk the block to append
      */
     public void append(Block blk) {
+        long start = Metrics.start();
         // Check block number continuity.
         if (blk.getNum() != getSize()) {
-            throw new IllegalArgumentException("Block number is incorrect.");
+            throw rejection(Metrics.Rejection.BLOCK_NUMBER, start, "Block number is incorrect.");
         }
         // Check that the previous hash in blk matches the last block's hash.
-        if (!blk.getPrevHash().equals(last.block.getHash())) {
-            throw new IllegalArgumentException("Previous hash does not match.");
-        }
-        // Check that the transaction is valid given current balances.
-        int[] balances = computeBalances();
-        int amt = blk.getAmount();
-        if (amt < 0) { // Anna sends money to Bob.
-            if (balances[0] < Math.abs(amt)) {
-                throw new IllegalArgumentException("Insufficient funds for Anna.");
+        if (!blk.getPrevHash().equals(last().getHash())) {
+            throw rejection(Metrics.Rejection.PREVIOUS_HASH, start, "Previous hash does not match.");
+        }
+        // Stored blocks have a fixed-size record with no room for transfers.
+        if (store != null && blk.getTransfers() != null) {
+            throw rejection(Metrics.Rejection.STORAGE, start, STORE_TRANSFERS);
+        }
+        // Check that the transactions are valid given current balances, applying them if so.
+        String fundsError = balances.apply(blk);
+        if (fundsError != null) {
+            throw rejection(Metrics.Rejection.FUNDS, start, fundsError);
+        }
+        if (store != null) {
+            try {
+                store.append(blk);
+            } catch (IOException e) {
+                balances.undo(blk);
+                Metrics.rejected(Metrics.Rejection.STORAGE, start);
+                throw new UncheckedIOException("Could not store block " + blk.getNum(), e);
+            }
+        }
+        push(blk);
+        recordHistory(blk);
+        Metrics.appended(1, start);
+        assert balancesMatchReplay() : "Running balances diverged from a full replay";
+    }
+
+    /**
+     * Appends a batch of blocks to the chain in a single validation pass.
+     * Every block must continue the numbering and hash links of the one before it,
+     * meet its declared difficulty (at least the chain's minimum), and be affordable
+     * given the balances after the blocks before it. The batch is atomic: if any block
+     * fails, none are appended and an IllegalArgumentException names the first bad
+     * block and the reason.
+     *
+     * @param batch the blocks to append, in order
+     */
+    public void appendAll(List<Block> batch) {
+        long start = Metrics.start();
+        Block prev = last();
+        for (int i = 0; i < batch.size(); i++) {
+            Block blk = batch.get(i);
+            String error = null;
+            Metrics.Rejection reason = null;
+            if (blk.getNum() != size + i) {
+                error = "Block number is incorrect.";
+                reason = Metrics.Rejection.BLOCK_NUMBER;
+            } else if (!prev.getHash().equals(blk.getPrevHash())) {
+                error = "Previous hash does not match.";
+                reason = Metrics.Rejection.PREVIOUS_HASH;
+            } else if (blk.getDifficulty() < minDifficulty || !blk.hasValidHash()) {
+                error = "Hash does not meet the required difficulty.";
+                reason = Metrics.Rejection.DIFFICULTY;
+            } else if (store != null && blk.getTransfers() != null) {
+                error = STORE_TRANSFERS;
+                reason = Metrics.Rejection.STORAGE;
+            } else {
+                error = balances.apply(blk);
+                reason = Metrics.Rejection.FUNDS;
             }
-        } else if (amt > 0) { // Bob sends money to Anna.
-            if (balances[1] < amt) {
-                throw new IllegalArgumentException("Insufficient funds for Bob.");
+            if (error != null) {
+                undo(batch, i);
+                history.truncate(size);
+                throw rejection(reason, start,
+                        "Block " + (size + i) + " (batch index " + i + "): " + error);
+            }
+            recordHistory(blk);
+            prev = blk;
+        }
+        if (store != null) {
+            int stored = 0;
+            try {
+                for (Block blk : batch) {
+                    store.append(blk);
+                    stored++;
+                }
+            } catch (IOException e) {
+                int failed = size + stored;
+                // Take back the part of the batch that did reach the store.
+                for (; stored > 0; stored--) {
+                    store.removeLast();
+                }
+                undo(batch, batch.size());
+                history.truncate(size);
+                Metrics.rejected(Metrics.Rejection.STORAGE, start);
+                throw new UncheckedIOException("Could not store block " + failed, e);
             }
         }
-        // Append block.
-        Node newNode = new Node(blk);
-        last.next = newNode;
-        last = newNode;
+        if (size + batch.size() > blocks.length) {
+            blocks = Arrays.copyOf(blocks, Math.max(size + batch.size(), size * 2));
+        }
+        for (Block blk : batch) {
+            push(blk);
+        }
+        Metrics.appended(batch.size(), start);
+        assert balancesMatchReplay() : "Running balances diverged from a full replay";
     }
 
     /**
@@ -97,16 +394,21 @@ public class BlockChain {
      * @return true if a block was removed, false otherwise
      */
     public boolean removeLast() {
-        if (first == last) {
+        if (size == 1) {
             return false;
         }
-        Node curr = first;
-        // Traverse to the second-to-last node.
-        while (curr.next != last) {
-            curr = curr.next;
+        if (store != null) {
+            store.removeLast();
         }
-        curr.next = null;
-        last = curr;
+        Block removed = blocks[--size];
+        balances.undo(removed);
+        if (removed.getTransfers() != null) {
+            transferBlocks--;
+        }
+        hashIndex.remove(removed.getHash(), size);
+        history.truncate(size);
+        blocks[size] = null;
+        assert balancesMatchReplay() : "Running balances diverged from a full replay";
         return true;
     }
 
@@ -116,7 +418,7 @@ public class BlockChain {
      * @return the last block’s hash
      */
     public Hash getHash() {
-        return last.block.getHash();
+        return last().getHash();
     }
 
     /**
@@ -125,76 +427,173 @@ public class BlockChain {
      * @return true if the blockchain is valid, false otherwise
      */
     public boolean isValidBlockChain() {
-        if (first == null)
-            return false;
-        // Initialize balances: index 0 = Anna, index 1 = Bob.
-        int anna = first.block.getAmount();
-        int bob = 0;
-        Node prev = first;
-        Node curr = first.next;
-        while (curr != null) {
-            Block blk = curr.block;
-            // Check block number continuity.
-            if (blk.getNum() != prev.block.getNum() + 1) {
-                return false;
-            }
-            // Check previous hash link.
-            if (!blk.getPrevHash().equals(prev.block.getHash())) {
-                return false;
-            }
-            // Check that block’s hash is valid.
-            if (!blk.getHash().isValid()) {
-                return false;
-            }
-            // Process transaction.
-            int amt = blk.getAmount();
-            if (amt < 0) {
-                int transfer = Math.abs(amt);
-                if (anna < transfer) {
-                    return false;
-                }
-                anna -= transfer;
-                bob += transfer;
-            } else if (amt > 0) {
-                if (bob < amt) {
-                    return false;
+        return firstInvalidBlock() < 0;
+    }
+
+    /**
+     * Validates the blockchain like isValidBlockChain(), checking segments of the
+     * chain in parallel on the given fork/join pool.
+     *
+     * @param pool the pool to run the checks on
+     * @return true if the blockchain is valid, false otherwise
+     */
+    public boolean isValidBlockChain(ForkJoinPool pool) {
+        return firstInvalidBlock(pool) < 0;
+    }
+
+    /**
+     * Returns the number of the first block that breaks the hash chain or overdraws
+     * an account, or -1 if the blockchain is valid.
+     *
+     * @return the first invalid block number, or -1
+     */
+    public int firstInvalidBlock() {
+        long start = Metrics.start();
+        int first = ChainValidator.firstInvalidBlock(blocks, size, minDifficulty);
+        Metrics.validated(start);
+        return first;
+    }
+
+    /**
+     * Returns the same result as firstInvalidBlock(), checking segments of the chain
+     * in parallel on the given fork/join pool.
+     *
+     * @param pool the pool to run the checks on
+     * @return the first invalid block number, or -1
+     */
+    public int firstInvalidBlock(ForkJoinPool pool) {
+        long start = Metrics.start();
+        int first = ChainValidator.firstInvalidBlock(blocks, size, minDifficulty, pool);
+        Metrics.validated(start);
+        return first;
+    }
+
+    /**
+     * Returns a checkpoint of the chain's current height, tip hash and balances.
+     * Checkpoints only hold Anna's and Bob's balances, so a chain with transfer
+     * blocks cannot be checkpointed.
+     *
+     * @return a checkpoint at the tip
+     */
+    public Checkpoint checkpoint() {
+        if (transferBlocks > 0) {
+            throw new IllegalStateException("Cannot checkpoint a chain with transfer blocks.");
+        }
+        return new Checkpoint(size, getHash(), getBalance(TransferBatch.ANNA),
+                getBalance(TransferBatch.BOB));
+    }
+
+    /**
+     * Verifies the whole chain in the background, recomputing every block's hash
+     * and running the same checks as firstInvalidBlock(). Useful after opening a
+     * chain from a checkpoint, whose older blocks were trusted. The blocks present
+     * when this is called are verified, so the chain may keep changing meanwhile.
+     *
+     * @return a future holding the first invalid block number, or -1
+     */
+    public CompletableFuture<Integer> verifyInBackground() {
+        Block[] history = Arrays.copyOf(blocks, size);
+        int min = minDifficulty;
+        return CompletableFuture.supplyAsync(() -> {
+            for (int i = 0; i < history.length; i++) {
+                if (!hasGenuineHash(history[i])) {
+                    return i;
                 }
-                bob -= amt;
-                anna += amt;
             }
-            prev = curr;
-            curr = curr.next;
+            return ChainValidator.firstInvalidBlock(history, history.length, min);
+        });
+    }
+
+    /**
+     * Returns the current balances, index 0 being Anna's and index 1 Bob's.
+     * Runs in constant time using the running balances.
+     *
+     * @return a new array holding Anna's and Bob's balances
+     */
+    public int[] getBalances() {
+        return new int[]{getBalance(TransferBatch.ANNA), getBalance(TransferBatch.BOB)};
+    }
+
+    /**
+     * Returns the current balance of an account, 0 if it never took part in a transfer.
+     * Runs in expected constant time using the running balances.
+     *
+     * @param account the account number
+     * @return the account's balance
+     */
+    public int getBalance(int account) {
+        return balances.get(account);
+    }
+
+    /**
+     * Returns Anna's and Bob's balances right after the given block, index 0 being
+     * Anna's and index 1 Bob's. Replays at most getHistoryInterval() - 1 blocks.
+     *
+     * @param height the block number, from 0 (the genesis block) to getSize() - 1
+     * @return a new array holding Anna's and Bob's balances at that height
+     */
+    public int[] getBalancesAt(int height) {
+        if (height < 0 || height >= size) {
+            throw new IndexOutOfBoundsException("No block " + height + " in a chain of " + size);
         }
-        return true;
+        return history.balancesAt(blocks, height);
+    }
+
+    /**
+     * Returns the number of blocks between the balance snapshots used by getBalancesAt.
+     *
+     * @return the history interval
+     */
+    public int getHistoryInterval() {
+        return history.getInterval();
     }
 
-    // Helper method to compute current balances.
-    // Returns an array where index 0 is Anna’s balance and index 1 is Bob’s.
-    private int[] computeBalances() {
-        int anna = first.block.getAmount();
+    /**
+     * Sets the number of blocks between balance snapshots and rebuilds them by
+     * replaying the chain. Snapshots take 8 bytes each: a larger interval uses less
+     * memory, a smaller one answers getBalancesAt with fewer replayed blocks.
+     *
+     * @param interval the number of blocks between snapshots, at least 1
+     */
+    public void setHistoryInterval(int interval) {
+        BalanceHistory rebuilt = new BalanceHistory(interval, blocks[0]);
+        int anna = blocks[0].getAmount();
         int bob = 0;
-        Node curr = first.next;
-        while (curr != null) {
-            int amt = curr.block.getAmount();
-            if (amt < 0) {
-                int transfer = Math.abs(amt);
-                anna -= transfer;
-                bob += transfer;
-            } else if (amt > 0) {
-                bob -= amt;
-                anna += amt;
-            }
-            curr = curr.next;
+        for (int i = 1; i < size; i++) {
+            anna += BalanceHistory.delta(blocks[i], TransferBatch.ANNA);
+            bob += BalanceHistory.delta(blocks[i], TransferBatch.BOB);
+            rebuilt.record(i, anna, bob);
+        }
+        history = rebuilt;
+    }
+
+    /**
+     * Returns true if the running balances equal those from replaying every
+     * transaction since the genesis block. Called from assertions after every
+     * append and removeLast, so running with -ea cross-checks the ledger.
+     *
+     * @return true if the running balances are consistent
+     */
+    boolean balancesMatchReplay() {
+        return computeBalances().sameBalances(balances);
+    }
+
+    // Helper method to compute current balances by replaying the whole chain.
+    BalanceTable computeBalances() {
+        BalanceTable replayed = new BalanceTable();
+        replayed.add(TransferBatch.ANNA, blocks[0].getAmount());
+        for (int i = 1; i < size; i++) {
+            replayed.apply(blocks[i]);
         }
-        return new int[]{anna, bob};
+        return replayed;
     }
 
     /**
      * Prints the current balances in the format "Alice: <amt>, Bob: <amt>".
      */
     public void printBalances() {
-        int[] balances = computeBalances();
-        System.out.println("Alice: " + balances[0] + ", Bob: " + balances[1]);
+        System.out.println("Alice: " + getBalance(TransferBatch.ANNA)
+                + ", Bob: " + getBalance(TransferBatch.BOB));
     }
 
     /**
@@ -205,15 +604,60 @@ public class BlockChain {
      */
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        Node curr = first;
-        while (curr != null) {
-            sb.append(curr.block.toString()).append("\n");
-            curr = curr.next;
+        for (int i = 0; i < size; i++) {
+            sb.append(blocks[i].toString()).append("\n");
         }
         return sb.toString().trim();
     }
-}
 
+    // Adds a block to the end of the array and the hash index without any checks,
+    // doubling the capacity when full.
+    private void push(Block blk) {
+        if (size == blocks.length) {
+            blocks = Arrays.copyOf(blocks, size * 2);
+        }
+        hashIndex.add(blk.getHash(), size);
+        if (blk.getTransfers() != null) {
+            transferBlocks++;
+        }
+        blocks[size++] = blk;
+    }
 
+    // Records Anna's and Bob's running balances after blk in the history.
+    private void recordHistory(Block blk) {
+        history.record(blk.getNum(), balances.get(TransferBatch.ANNA),
+                balances.get(TransferBatch.BOB));
+    }
 
+    // Counts a refused append and returns the exception to throw for it.
+    private static IllegalArgumentException rejection(Metrics.Rejection reason, long start,
+            String message) {
+        Metrics.rejected(reason, start);
+        return new IllegalArgumentException(message);
+    }
+
+    // Undoes the balance changes of the first n blocks of a batch, last first.
+    private void undo(List<Block> batch, int n) {
+        for (int i = n - 1; i >= 0; i--) {
+            balances.undo(batch.get(i));
+        }
+    }
 
+    // Returns a stored block after checking its hash, see hasGenuineHash.
+    private static Block verified(Block blk) {
+        if (!hasGenuineHash(blk)) {
+            throw new IllegalArgumentException("Stored block " + blk.getNum() + " has a bad hash.");
+        }
+        return blk;
+    }
+
+    // Checks that a block's hash is valid and matches its contents.
+    private static boolean hasGenuineHash(Block blk) {
+        return blk.hasValidHash() && blk.computeHash(blk.getNonce()).equals(blk.getHash());
+    }
+
+    // Returns the block at the tip of the chain.
+    private Block last() {
+        return blocks[size - 1];
+    }
+}
@@ -1,17 +1,56 @@
 package edu.grinnell.csc207.blockchain;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Scanner;
+import javax.management.JMException;
 
 public class BlockChainDriver {
 
     /**
      * The main entry point for the block chain program.
      *
-     * @param args the command-line arguments (first argument is the initial amount)
+     * @param args the command-line arguments: options, then the initial amount and an
+     *             optional file the chain is persisted in, with a checkpoint kept next
+     *             to it for fast startup. The option --batch runs the commands of a
+     *             script read from standard input (or --batch=FILE from a file), see
+     *             ScriptRunner, and --compact makes batch output machine-readable.
+     *             A batch run exits with status 1 if any command failed.
+     * @throws IOException if the chain file or script cannot be read or written
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        String script = null;
+        boolean batch = false;
+        boolean compact = false;
+        int optionCount = 0;
+        while (optionCount < args.length && args[optionCount].startsWith("--")) {
+            String option = args[optionCount++];
+            if (option.equals("--batch")) {
+                batch = true;
+            } else if (option.startsWith("--batch=")) {
+                batch = true;
+                script = option.substring("--batch=".length());
+            } else if (option.equals("--compact")) {
+                compact = true;
+            } else {
+                System.err.println("Unknown option " + option);
+                return;
+            }
+        }
+        args = Arrays.copyOfRange(args, optionCount, args.length);
         if (args.length < 1) {
-            System.err.println("Usage: java BlockChainDriver <initial amount>");
+            System.err.println("Usage: java BlockChainDriver [--batch[=script]] [--compact]"
+                    + " <initial amount> [chain file]");
             return;
         }
         int initial = 0;
@@ -26,7 +65,39 @@ public class BlockChainDriver {
             return;
         }
 
-        BlockChain blockchain = new BlockChain(initial);
+        BlockStore store = null;
+        Path checkpointFile = null;
+        BlockChain blockchain;
+        if (args.length > 1) {
+            store = BlockStore.open(Paths.get(args[1]), BlockStore.SyncPolicy.EVERY_WRITE);
+            checkpointFile = Paths.get(args[1] + ".ckpt");
+            Checkpoint checkpoint = null;
+            if (Files.exists(checkpointFile)) {
+                try {
+                    checkpoint = Checkpoint.read(checkpointFile);
+                } catch (IOException e) {
+                    System.err.println("Ignoring checkpoint: " + e.getMessage());
+                }
+            }
+            blockchain = BlockChain.open(store, initial, checkpoint);
+        } else {
+            blockchain = new BlockChain(initial);
+        }
+        if (Metrics.ENABLED) {
+            startMetrics();
+        }
+        ParallelMiner miner = new ParallelMiner(Runtime.getRuntime().availableProcessors());
+        if (batch) {
+            int errors = runScript(blockchain, miner, script, compact, checkpointFile);
+            miner.close();
+            if (store != null) {
+                store.close();
+            }
+            if (errors > 0) {
+                System.exit(1);
+            }
+            return;
+        }
         Scanner scanner = new Scanner(System.in);
         boolean running = true;
 
@@ -44,9 +115,14 @@ public class BlockChainDriver {
                     System.out.println("    remove: removes the last block from the end of the chain");
                     System.out.println("    check: checks that the block chain is valid");
                     System.out.println("    report: reports the balances of Alice and Bob");
+                    System.out.println("    metrics: prints mining, append and validation metrics");
                     System.out.println("    help: prints this list of commands");
                     System.out.println("    quit: quits the program");
                     break;
+                case "metrics":
+                    System.out.println(Metrics.ENABLED ? Metrics.report()
+                            : "Metrics are off; start with -Dblockchain.metrics=true.");
+                    break;
                 case "mine":
                     System.out.print("Amount transferred? ");
                     int mineAmt;
@@ -56,7 +132,7 @@ public class BlockChainDriver {
                         System.out.println("Invalid amount.");
                         break;
                     }
-                    Block minedBlock = blockchain.mine(mineAmt);
+                    Block minedBlock = blockchain.mine(mineAmt, miner);
                     System.out.println("amount = " + mineAmt + ", nonce = " + minedBlock.getNonce());
                     break;
                 case "append":
@@ -77,7 +153,8 @@ public class BlockChainDriver {
                         break;
                     }
                     int blockNum = blockchain.getSize();
-                    Block candidate = new Block(blockNum, appendAmt, blockchain.getHash(), nonce);
+                    Block candidate = new Block(blockNum, appendAmt, blockchain.getHash(),
+                            blockchain.nextDifficulty(), nonce);
                     try {
                         blockchain.append(candidate);
                     } catch (IllegalArgumentException e) {
@@ -108,5 +185,47 @@ public class BlockChainDriver {
             }
         }
         scanner.close();
+        miner.close();
+        if (store != null) {
+            blockchain.checkpoint().write(checkpointFile);
+            store.close();
+        }
+    }
+
+    // Runs a script through a ScriptRunner with buffered input and output, writes a
+    // checkpoint of the chain it ended with if the chain is stored, and returns the
+    // number of commands that failed.
+    private static int runScript(BlockChain blockchain, Miner miner, String script,
+            boolean compact, Path checkpointFile) throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16));
+        ScriptRunner runner = new ScriptRunner(blockchain, miner, compact,
+                checkpointFile == null, out);
+        int errors;
+        try (BufferedReader in = script == null
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)
+                : Files.newBufferedReader(Paths.get(script))) {
+            errors = runner.run(in);
+        } finally {
+            out.flush();
+        }
+        if (checkpointFile != null) {
+            runner.getChain().checkpoint().write(checkpointFile);
+        }
+        return errors;
+    }
+
+    // Publishes the metrics over JMX, and prints them to standard error every
+    // blockchain.metrics.period seconds if that property is set.
+    private static void startMetrics() {
+        try {
+            Metrics.register();
+        } catch (JMException e) {
+            System.err.println("Metrics are not available over JMX: " + e.getMessage());
+        }
+        long period = Long.getLong("blockchain.metrics.period", 0);
+        if (period > 0) {
+            Metrics.startReporting(Duration.ofSeconds(period), System.err);
+        }
     }
 }
@@ -0,0 +1,27 @@
+package edu.grinnell.csc207.blockchain;
+
+/**
+ * Hashes the header of a single block for many different nonces.
+ *
+ * Hashers are made by a HashEngine for one set of header fields, so the work that
+ * does not depend on the nonce can be done once. A hasher is not thread-safe, so
+ * every mining thread uses its own.
+ */
+interface BlockHasher {
+
+    /**
+     * Returns true if the header hashes to a Hash meeting the difficulty with the given nonce.
+     *
+     * @param nonce the nonce to try
+     * @return true if the resulting hash is valid
+     */
+    boolean isValidNonce(long nonce);
+
+    /**
+     * Returns the hash of the header with the given nonce.
+     *
+     * @param nonce the nonce to hash with
+     * @return the resulting hash
+     */
+    Hash hash(long nonce);
+}
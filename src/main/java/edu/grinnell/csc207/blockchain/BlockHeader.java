@@ -0,0 +1,151 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.List;
+
+/**
+ * The hashed fields of a block without its transfers: number, amount, previous hash,
+ * difficulty, the Merkle root of the transfers (if any), nonce and hash.
+ *
+ * Headers are enough to check the hash links and proof of work of a whole chain,
+ * and, together with a MerkleProof, that a transfer is in a given block, without
+ * ever holding the blocks' transfers. Balances cannot be checked from headers.
+ */
+public final class BlockHeader {
+    private final int num;
+    private final int amount;
+    private final Hash prevHash;
+    private final int difficulty;
+    private final Hash bodyRoot;
+    private final long nonce;
+    private final Hash hash;
+
+    /**
+     * Constructs a header from its fields. The hash is not checked here.
+     *
+     * @param num        the block number
+     * @param amount     the dollar amount moved between Anna and Bob
+     * @param prevHash   the previous block's hash (or null for start block)
+     * @param difficulty the number of leading zero bits the hash must have
+     * @param bodyRoot   the Merkle root of the block's transfers (or null if it has none)
+     * @param nonce      the block's nonce
+     * @param hash       the block's hash
+     */
+    public BlockHeader(int num, int amount, Hash prevHash, int difficulty, Hash bodyRoot,
+            long nonce, Hash hash) {
+        this.num = num;
+        this.amount = amount;
+        this.prevHash = prevHash;
+        this.difficulty = difficulty;
+        this.bodyRoot = bodyRoot;
+        this.nonce = nonce;
+        this.hash = hash;
+    }
+
+    /**
+     * Returns the block number.
+     *
+     * @return the block number
+     */
+    public int getNum() {
+        return num;
+    }
+
+    /**
+     * Returns the amount moved between Anna and Bob.
+     *
+     * @return the block's amount
+     */
+    public int getAmount() {
+        return amount;
+    }
+
+    /**
+     * Returns the previous block's hash, or null for the genesis block.
+     *
+     * @return the previous hash
+     */
+    public Hash getPrevHash() {
+        return prevHash;
+    }
+
+    /**
+     * Returns the number of leading zero bits the hash must have.
+     *
+     * @return the block's difficulty
+     */
+    public int getDifficulty() {
+        return difficulty;
+    }
+
+    /**
+     * Returns the Merkle root of the block's transfers, or null if it has none.
+     *
+     * @return the body root, or null
+     */
+    public Hash getBodyRoot() {
+        return bodyRoot;
+    }
+
+    /**
+     * Returns the block's nonce.
+     *
+     * @return the nonce
+     */
+    public long getNonce() {
+        return nonce;
+    }
+
+    /**
+     * Returns the block's hash.
+     *
+     * @return the hash
+     */
+    public Hash getHash() {
+        return hash;
+    }
+
+    /**
+     * Returns true if the hash meets the difficulty and is the hash of these fields.
+     *
+     * @return true if the proof of work is genuine
+     */
+    public boolean hasGenuineHash() {
+        return hash.isValid(difficulty)
+                && HashEngine.DEFAULT.newHasher(num, amount, prevHash, difficulty, bodyRoot)
+                        .hash(nonce).equals(hash);
+    }
+
+    /**
+     * Returns true if the proof shows its transfer to be in this block.
+     *
+     * @param proof the inclusion proof
+     * @return true if the transfer is committed to by this header
+     */
+    public boolean includes(MerkleProof proof) {
+        return proof.verify(bodyRoot);
+    }
+
+    /**
+     * Returns the position of the first header that breaks the numbering or hash links,
+     * declares a difficulty below minDifficulty, or whose hash is not genuine, or -1 if
+     * all headers are valid. Transfers and balances are not checked.
+     *
+     * @param headers       the headers of a chain, genesis first
+     * @param minDifficulty the lowest difficulty a block may declare
+     * @return the first invalid header's position, or -1
+     */
+    public static int firstInvalidHeader(List<BlockHeader> headers, int minDifficulty) {
+        BlockHeader prev = null;
+        for (int i = 0; i < headers.size(); i++) {
+            BlockHeader header = headers.get(i);
+            boolean linked = prev == null
+                    ? header.num == 0 && header.prevHash == null
+                    : header.num == prev.num + 1 && prev.hash.equals(header.prevHash);
+            if (!linked || header.difficulty < minDifficulty || !header.hasGenuineHash()) {
+                return i;
+            }
+            prev = header;
+        }
+        return -1;
+    }
+}
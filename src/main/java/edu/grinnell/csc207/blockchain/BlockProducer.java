@@ -0,0 +1,167 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Turns a Mempool's transfers into blocks on two background threads.
+ *
+ * The assembler takes up to maxTransfers transfers from the pool, builds their batch
+ * and its Merkle root, and hands it over; the miner mines each batch onto the tip and
+ * appends it. Both run at once, so the next block is being filled while the current
+ * one is mined, and submitters are never held up by mining. One assembled batch waits
+ * between the stages at most, so transfers keep queueing in the pool, in its order,
+ * rather than in batches that are already fixed.
+ */
+public class BlockProducer implements AutoCloseable {
+    // How long the assembler waits for transfers before checking whether to stop.
+    private static final long POLL_MILLIS = 50;
+
+    private final Mempool pool;
+    private final BlockChain chain;
+    private final int maxTransfers;
+    private final BlockingQueue<Job> assembled = new ArrayBlockingQueue<>(1);
+    private final Thread assembler;
+    private final Thread miner;
+    private final LongAdder transactions = new LongAdder();
+    private final LongAdder blocks = new LongAdder();
+    private final long started = System.nanoTime();
+    private volatile boolean closed;
+
+    /**
+     * Starts producing blocks from the pool's transfers onto its chain.
+     *
+     * @param pool         the pool to take transfers from
+     * @param maxTransfers the most transfers in one block
+     */
+    public BlockProducer(Mempool pool, int maxTransfers) {
+        if (maxTransfers < 1) {
+            throw new IllegalArgumentException("A block must hold at least one transfer.");
+        }
+        this.pool = pool;
+        this.chain = pool.getChain();
+        this.maxTransfers = maxTransfers;
+        this.assembler = new Thread(this::assemble, "block-assembler");
+        this.miner = new Thread(this::mine, "block-miner");
+        assembler.setDaemon(true);
+        miner.setDaemon(true);
+        assembler.start();
+        miner.start();
+    }
+
+    /**
+     * Returns the number of transfers appended so far.
+     *
+     * @return the confirmed transfer count
+     */
+    public long getTransactions() {
+        return transactions.sum();
+    }
+
+    /**
+     * Returns the number of blocks appended so far.
+     *
+     * @return the produced block count
+     */
+    public long getBlocks() {
+        return blocks.sum();
+    }
+
+    /**
+     * Returns the sustained throughput since the producer started.
+     *
+     * @return confirmed transfers per second
+     */
+    public double getTransactionsPerSecond() {
+        return transactions.sum() / ((System.nanoTime() - started) / 1e9);
+    }
+
+    /**
+     * Stops both threads, abandoning the block being mined. Transfers taken from the
+     * pool but not appended fail with a CancellationException; the rest stay queued.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        assembler.interrupt();
+        miner.interrupt();
+        boolean interrupted = false;
+        for (Thread t : new Thread[]{assembler, miner}) {
+            while (t.isAlive()) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        Job left = assembled.poll();
+        if (left != null) {
+            pool.fail(left.included, new CancellationException("Block producer closed"));
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Fills batches from the pool and hands them to the miner.
+    private void assemble() {
+        while (!closed) {
+            List<Mempool.Pending> taken;
+            try {
+                taken = pool.take(maxTransfers, POLL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (taken.isEmpty()) {
+                continue;
+            }
+            TransferBatch batch = Mempool.toBatch(taken);
+            batch.merkleRoot();
+            try {
+                assembled.put(new Job(batch, taken));
+            } catch (InterruptedException e) {
+                pool.fail(taken, new CancellationException("Block producer closed"));
+                return;
+            }
+        }
+    }
+
+    // Mines each assembled batch onto the tip and appends it.
+    private void mine() {
+        Miner stoppable = new SequentialMiner(() -> closed);
+        while (!closed) {
+            Job job;
+            try {
+                job = assembled.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Block blk;
+            try {
+                blk = chain.mine(job.batch, stoppable);
+            } catch (CancellationException e) {
+                pool.fail(job.included, e);
+                return;
+            }
+            if (pool.appendAndSettle(blk, job.included)) {
+                transactions.add(job.included.size());
+                blocks.increment();
+            }
+        }
+    }
+
+    // A batch ready to mine and the pool transfers it holds.
+    private static final class Job {
+        final TransferBatch batch;
+        final List<Mempool.Pending> included;
+
+        Job(TransferBatch batch, List<Mempool.Pending> included) {
+            this.batch = batch;
+            this.included = included;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of fixed-size binary block records, read and written through a
+ * memory-mapped FileChannel.
+ *
+ * The file starts with a 16-byte header (magic, version, record count) followed by
+ * 88-byte records: num, amount, nonce, flags (whether there is a prevHash, and the
+ * difficulty in bits 8 to 16), prevHash, hash and a CRC32 of the rest of the record.
+ * A record is written before the count that covers it, and on open the last counted
+ * record is checked against its CRC, so a torn final record left by a crash is cut
+ * off. Opening reads only the header and the last record, so it takes the same time
+ * for any number of blocks.
+ */
+public class BlockStore implements Closeable {
+    /**
+     * When the store forces its writes to disk.
+     */
+    public enum SyncPolicy {
+        /** Force every append and removal before returning. */
+        EVERY_WRITE,
+        /** Force only on sync() and close(). */
+        ON_CLOSE,
+        /** Never force; the operating system writes pages back when it chooses. */
+        NEVER
+    }
+
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 88;
+
+    private static final int MAGIC = 0x424C4B53;
+    private static final int VERSION = 2;
+    private static final int COUNT_OFFSET = 8;
+    private static final int HASH_SIZE = 32;
+    private static final int CRC_OFFSET = RECORD_SIZE - 4;
+    private static final int HAS_PREV_HASH = 1;
+    private static final int DIFFICULTY_SHIFT = 8;
+    private static final int MIN_CAPACITY = HEADER_SIZE + 1024 * RECORD_SIZE;
+
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private MappedByteBuffer map;
+    private int count;
+
+    // Opens the store over an already recovered channel holding count records.
+    private BlockStore(FileChannel channel, SyncPolicy policy, int count) throws IOException {
+        this.channel = channel;
+        this.policy = policy;
+        this.count = count;
+        remap(Math.max(MIN_CAPACITY, recordOffset(count) * 2));
+    }
+
+    /**
+     * Opens the store in the given file, creating it if it does not exist, and cuts
+     * off a torn final record left by a crash.
+     *
+     * @param path   the file holding the store
+     * @param policy when writes are forced to disk
+     * @return the opened store
+     * @throws IOException if the file cannot be opened or is not a block store
+     */
+    public static BlockStore open(Path path, SyncPolicy policy) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int count = recover(channel);
+            // Drop any partial record or slack left beyond the last good record.
+            channel.truncate(recordOffset(count));
+            return new BlockStore(channel, policy, count);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of blocks in the store.
+     *
+     * @return the block count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Reads the block with the given number. The stored hash is trusted, not recomputed.
+     *
+     * @param num the block number, from 0 to size() - 1
+     * @return the stored block
+     */
+    public Block read(int num) {
+        if (num < 0 || num >= count) {
+            throw new IndexOutOfBoundsException("No block " + num + " in a store of " + count);
+        }
+        int off = (int) recordOffset(num);
+        int flags = map.getInt(off + 16);
+        Hash prevHash = (flags & HAS_PREV_HASH) != 0 ? readHash(off + 20) : null;
+        return new Block(map.getInt(off), map.getInt(off + 4), prevHash,
+                flags >>> DIFFICULTY_SHIFT, map.getLong(off + 8), readHash(off + 20 + HASH_SIZE));
+    }
+
+    /**
+     * Appends a block record to the end of the store. Blocks carrying transfer
+     * batches do not fit a fixed-size record and are rejected.
+     *
+     * @param blk the block to append
+     * @throws IOException if the file cannot be extended
+     */
+    public void append(Block blk) throws IOException {
+        if (blk.getTransfers() != null) {
+            throw new IllegalArgumentException("Cannot store a block carrying transfers.");
+        }
+        long end = recordOffset(count + 1);
+        if (end > map.capacity()) {
+            remap(end * 2);
+        }
+        int off = (int) recordOffset(count);
+        map.putInt(off, blk.getNum());
+        map.putInt(off + 4, blk.getAmount());
+        map.putLong(off + 8, blk.getNonce());
+        int flags = blk.getDifficulty() << DIFFICULTY_SHIFT;
+        map.putInt(off + 16, blk.getPrevHash() == null ? flags : flags | HAS_PREV_HASH);
+        writeHash(off + 20, blk.getPrevHash());
+        writeHash(off + 20 + HASH_SIZE, blk.getHash());
+        map.putInt(off + CRC_OFFSET, checksum(map, off));
+        forceIfEveryWrite(off, RECORD_SIZE);
+        setCount(count + 1);
+    }
+
+    /**
+     * Removes the last block record from the store.
+     *
+     * @return true if a record was removed, false if the store is empty
+     */
+    public boolean removeLast() {
+        if (count == 0) {
+            return false;
+        }
+        setCount(count - 1);
+        // Clear the checksum so the removed record can never be recovered.
+        int crc = (int) recordOffset(count) + CRC_OFFSET;
+        map.putInt(crc, 0);
+        forceIfEveryWrite(crc, 4);
+        return true;
+    }
+
+    /**
+     * Forces all writes so far to disk.
+     */
+    public void sync() {
+        map.force();
+    }
+
+    /**
+     * Forces the store to disk unless the policy is NEVER, trims the file to its
+     * records and closes it.
+     *
+     * @throws IOException if the file cannot be trimmed or closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (policy != SyncPolicy.NEVER) {
+            map.force();
+        }
+        channel.truncate(recordOffset(count));
+        channel.close();
+    }
+
+    // Reads or initializes the header and returns the number of intact records.
+    private static int recover(FileChannel channel) throws IOException {
+        long length = channel.size();
+        if (length < HEADER_SIZE) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putLong(COUNT_OFFSET, 0);
+            header.force();
+            return 0;
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Not a version " + VERSION + " block store");
+        }
+        long whole = (length - HEADER_SIZE) / RECORD_SIZE;
+        int count = (int) Math.min(header.getLong(COUNT_OFFSET), whole);
+        while (count > 0) {
+            long off = recordOffset(count - 1);
+            MappedByteBuffer last = channel.map(FileChannel.MapMode.READ_ONLY, off, RECORD_SIZE);
+            if (last.getInt(CRC_OFFSET) == checksum(last, 0)) {
+                break;
+            }
+            count--;
+        }
+        header.putLong(COUNT_OFFSET, count);
+        header.force();
+        return count;
+    }
+
+    // Maps the first capacity bytes of the file, growing it as needed.
+    private void remap(long capacity) throws IOException {
+        if (capacity > Integer.MAX_VALUE) {
+            capacity = HEADER_SIZE + (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+            if (recordOffset(count + 1) > capacity) {
+                throw new IOException("Block store is full");
+            }
+        }
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void setCount(int newCount) {
+        count = newCount;
+        map.putLong(COUNT_OFFSET, count);
+        forceIfEveryWrite(COUNT_OFFSET, 8);
+    }
+
+    // Forces only the bytes just written, so a write costs the pages it touched
+    // rather than a scan of the whole mapping.
+    private void forceIfEveryWrite(int off, int length) {
+        if (policy == SyncPolicy.EVERY_WRITE) {
+            map.force(off, length);
+        }
+    }
+
+    private Hash readHash(int off) {
+        return new Hash(map.getLong(off), map.getLong(off + 8), map.getLong(off + 16),
+                map.getLong(off + 24));
+    }
+
+    // Writes a 32-byte hash; a null hash is written as zeroes.
+    private void writeHash(int off, Hash hash) {
+        if (hash != null && hash.length() != HASH_SIZE) {
+            throw new IllegalArgumentException("Only 32-byte hashes can be stored");
+        }
+        for (int i = 0; i < 4; i++) {
+            map.putLong(off + 8 * i, hash == null ? 0 : hash.word(i));
+        }
+    }
+
+    // CRC32 of the record at off, excluding its trailing checksum.
+    private static int checksum(MappedByteBuffer buf, int off) {
+        CRC32 crc = new CRC32();
+        crc.update(buf.slice(off, CRC_OFFSET));
+        return (int) crc.getValue();
+    }
+
+    private static long recordOffset(int num) {
+        return HEADER_SIZE + (long) num * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,281 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A tree of competing branches on top of a BlockChain, which always holds the branch
+ * with the most cumulative work.
+ *
+ * A block's work is 2^difficulty, the expected number of hashes it took to mine.
+ * Blocks that extend some block other than the tip are kept as side blocks, keyed by
+ * hash so their children can find them. When a side branch gains more work than
+ * the main chain, the tree reorganizes: it removes main blocks down to the common
+ * ancestor, undoing their balance changes, and appends the side branch, so the cost
+ * is proportional to the depth of the reorganization. The replaced blocks become
+ * side blocks in turn. Side blocks more than the prune depth below the tip are
+ * dropped, and blocks forking off deeper than that are refused, so memory and reorg
+ * depth stay bounded.
+ */
+public class BlockTree {
+    /**
+     * What adding a block did to the tree.
+     */
+    public enum Outcome {
+        /** The block extended the main chain. */
+        EXTENDED,
+        /** The block was kept on a side branch with less work than the main chain. */
+        SIDE_BRANCH,
+        /** The block's branch overtook the main chain and replaced part of it. */
+        REORGANIZED
+    }
+
+    private final BlockChain chain;
+    private final int pruneDepth;
+    // Cumulative work of the main chain up to each of the last pruneDepth + 1 blocks,
+    // indexed by block number modulo the length; forks never reach further back.
+    private final BigInteger[] recentWork;
+    // Cumulative work of the whole main chain.
+    private BigInteger work;
+    // Blocks off the main chain by hash, each with its cumulative work.
+    private final Map<Hash, SideBlock> side = new HashMap<>();
+    private int reorganizations;
+
+    /**
+     * Constructs a tree whose main chain is the given chain, which it takes over:
+     * the chain must only be changed through the tree afterwards.
+     *
+     * @param chain      the main chain
+     * @param pruneDepth how many blocks below the tip side branches are kept, at least 1
+     */
+    public BlockTree(BlockChain chain, int pruneDepth) {
+        if (pruneDepth < 1) {
+            throw new IllegalArgumentException("Prune depth must be positive.");
+        }
+        this.chain = chain;
+        this.pruneDepth = pruneDepth;
+        this.recentWork = new BigInteger[pruneDepth + 1];
+        work = BigInteger.ZERO;
+        for (int i = 0; i < chain.getSize(); i++) {
+            work = work.add(work(chain.getBlock(i)));
+            recentWork[i % recentWork.length] = work;
+        }
+    }
+
+    /**
+     * Returns the main chain. It must not be changed directly.
+     *
+     * @return the chain with the most work
+     */
+    public BlockChain getChain() {
+        return chain;
+    }
+
+    /**
+     * Returns the cumulative work of the main chain.
+     *
+     * @return the sum of 2^difficulty over the main chain's blocks
+     */
+    public BigInteger getWork() {
+        return work;
+    }
+
+    /**
+     * Returns the number of blocks kept on side branches.
+     *
+     * @return the side block count
+     */
+    public int getSideBlockCount() {
+        return side.size();
+    }
+
+    /**
+     * Returns how many times a side branch has replaced part of the main chain.
+     *
+     * @return the number of reorganizations
+     */
+    public int getReorganizations() {
+        return reorganizations;
+    }
+
+    /**
+     * Adds a block to the tree. Its parent must be a main chain block at most the
+     * prune depth below the tip, or a side block. Blocks extending the tip are checked
+     * as BlockChain.appendAll does; side blocks only have their number and hash checked
+     * until their branch takes over, when appendAll's checks apply to every block on it.
+     * Throws IllegalArgumentException if the block is refused, in which case the tree
+     * is unchanged.
+     *
+     * @param blk the block to add
+     * @return what adding the block did
+     */
+    public Outcome add(Block blk) {
+        Hash parentHash = blk.getPrevHash();
+        if (parentHash == null) {
+            throw new IllegalArgumentException("Only the genesis block has no parent.");
+        }
+        if (side.containsKey(blk.getHash()) || chain.containsHash(blk.getHash())) {
+            throw new IllegalArgumentException("Block is already known.");
+        }
+        if (parentHash.equals(chain.getHash())) {
+            // append trusts the declared difficulty, appendAll checks it like a reorg.
+            chain.appendAll(Collections.singletonList(blk));
+            extendWork(blk.getNum(), work.add(work(blk)));
+            prune();
+            return Outcome.EXTENDED;
+        }
+        BigInteger parentWork;
+        int parentNum;
+        Block mainParent = chain.findByHash(parentHash);
+        SideBlock sideParent = side.get(parentHash);
+        if (mainParent != null) {
+            parentNum = mainParent.getNum();
+            if (parentNum < tipNum() - pruneDepth) {
+                throw new IllegalArgumentException("Block forks off below the prune depth.");
+            }
+            parentWork = mainWorkAt(parentNum);
+        } else if (sideParent != null) {
+            parentNum = sideParent.block.getNum();
+            parentWork = sideParent.work;
+        } else {
+            throw new IllegalArgumentException("Unknown parent block.");
+        }
+        if (blk.getNum() != parentNum + 1) {
+            throw new IllegalArgumentException("Block number is incorrect.");
+        }
+        if (blk.getDifficulty() < chain.getMinDifficulty() || !blk.hasValidHash()) {
+            throw new IllegalArgumentException("Hash does not meet the required difficulty.");
+        }
+        SideBlock node = new SideBlock(blk, parentWork.add(work(blk)));
+        side.put(blk.getHash(), node);
+        if (node.work.compareTo(getWork()) <= 0) {
+            return Outcome.SIDE_BRANCH;
+        }
+        reorganize(node);
+        prune();
+        return Outcome.REORGANIZED;
+    }
+
+    // Replaces the main chain above the fork point with the branch ending at tip.
+    // If a block on the branch is invalid, the main chain is kept and that block and
+    // everything built on it leave the tree.
+    private void reorganize(SideBlock tip) {
+        List<SideBlock> branch = new ArrayList<>();
+        for (SideBlock node = tip; node != null; node = side.get(node.block.getPrevHash())) {
+            branch.add(node);
+        }
+        Collections.reverse(branch);
+        SideBlock first = branch.get(0);
+        int fork = first.block.getNum() - 1;
+        if (!chain.getBlock(fork).getHash().equals(first.block.getPrevHash())) {
+            side.remove(tip.block.getHash());
+            throw new IllegalArgumentException("Branch lost its fork point to pruning.");
+        }
+        List<Block> removed = new ArrayList<>();
+        while (tipNum() > fork) {
+            removed.add(chain.getBlock(tipNum()));
+            chain.removeLast();
+        }
+        Collections.reverse(removed);
+        // Append the branch a block at a time, so a failure names the bad block.
+        int appended = 0;
+        try {
+            for (SideBlock node : branch) {
+                chain.appendAll(Collections.singletonList(node.block));
+                appended++;
+            }
+        } catch (IllegalArgumentException e) {
+            // The branch is invalid: put the old main chain back as it was.
+            for (int i = 0; i < appended; i++) {
+                chain.removeLast();
+            }
+            chain.appendAll(removed);
+            dropWithDescendants(branch.get(appended).block.getHash());
+            throw e;
+        }
+        // The replaced blocks become a side branch, the new main blocks leave it.
+        BigInteger total = mainWorkAt(fork);
+        for (Block blk : removed) {
+            total = total.add(work(blk));
+            side.put(blk.getHash(), new SideBlock(blk, total));
+        }
+        for (SideBlock node : branch) {
+            side.remove(node.block.getHash());
+        }
+        // A shorter branch leaves ring slots below the fork holding removed blocks'
+        // work, so every slot is refilled from the new total.
+        work = tip.work;
+        rebuildRecentWork();
+        reorganizations++;
+    }
+
+    // Removes a side block and every side block built on it.
+    private void dropWithDescendants(Hash root) {
+        Set<Hash> dropped = new HashSet<>();
+        dropped.add(root);
+        side.remove(root);
+        // Side blocks are few and a parent's number is one less than its child's, so
+        // passing over them in block number order reaches every descendant.
+        List<SideBlock> rest = new ArrayList<>(side.values());
+        rest.sort(Comparator.comparingInt(node -> node.block.getNum()));
+        for (SideBlock node : rest) {
+            if (dropped.contains(node.block.getPrevHash())) {
+                dropped.add(node.block.getHash());
+                side.remove(node.block.getHash());
+            }
+        }
+    }
+
+    // Returns the main chain's cumulative work up to a block at most the prune depth
+    // below the tip.
+    private BigInteger mainWorkAt(int num) {
+        return recentWork[num % recentWork.length];
+    }
+
+    // Refills the ring for the last pruneDepth + 1 main blocks, walking down from work.
+    private void rebuildRecentWork() {
+        BigInteger total = work;
+        for (int i = tipNum(); i >= Math.max(0, tipNum() - pruneDepth); i--) {
+            recentWork[i % recentWork.length] = total;
+            total = total.subtract(work(chain.getBlock(i)));
+        }
+    }
+
+    // Records the main chain's new tip and its cumulative work.
+    private void extendWork(int num, BigInteger total) {
+        work = total;
+        recentWork[num % recentWork.length] = total;
+    }
+
+    // Drops side blocks too far below the tip to ever take over without a deeper fork.
+    private void prune() {
+        int floor = tipNum() - pruneDepth;
+        side.values().removeIf(node -> node.block.getNum() <= floor);
+    }
+
+    private int tipNum() {
+        return chain.getSize() - 1;
+    }
+
+    private static BigInteger work(Block blk) {
+        return BigInteger.ONE.shiftLeft(blk.getDifficulty());
+    }
+
+    // A block off the main chain and the cumulative work of its branch.
+    private static final class SideBlock {
+        final Block block;
+        final BigInteger work;
+
+        SideBlock(Block block, BigInteger work) {
+            this.block = block;
+            this.work = work;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams a blockchain to and from a compact binary format.
+ *
+ * After a 16-byte header (magic, version, block count and minimum difficulty), each
+ * block takes 14 bytes: amount, difficulty and nonce. A block carrying transfers sets
+ * the top bit of its difficulty and is followed by its transfer count and the payer,
+ * payee and amount of each transfer. Block numbers and previous
+ * hashes follow from the position in the stream, and each hash is recomputed while
+ * reading, so nothing that can be derived is stored. The reader checks every block
+ * as it arrives, exactly as a fully verified append would, and fails at the first
+ * bad block.
+ *
+ * A header stream has the same layout with a different magic, except that a block
+ * carrying transfers is followed by its 32-byte Merkle root instead of its transfers.
+ * It lets a client check a chain's links and proof of work without the transfers.
+ */
+public final class ChainCodec {
+    private static final int MAGIC = 0x42434853;
+    private static final int HEADER_MAGIC = 0x42434848;
+    private static final int VERSION = 2;
+    private static final int HAS_TRANSFERS = 0x8000;
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Guards against allocating for a corrupt transfer count.
+    private static final int MAX_TRANSFERS = 1 << 20;
+
+    private ChainCodec() {
+    }
+
+    /**
+     * Writes the chain to the stream block by block. The stream is flushed but not closed.
+     *
+     * @param chain the chain to write
+     * @param out   the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    public static void write(BlockChain chain, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(chain.getSize());
+        data.writeInt(chain.getMinDifficulty());
+        for (int i = 0; i < chain.getSize(); i++) {
+            writeBlock(data, chain.getBlock(i));
+        }
+        data.flush();
+    }
+
+    /**
+     * Writes the headers of the chain's blocks to the stream. The stream is flushed but
+     * not closed.
+     *
+     * @param chain the chain whose headers to write
+     * @param out   the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    public static void writeHeaders(BlockChain chain, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        data.writeInt(HEADER_MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(chain.getSize());
+        data.writeInt(chain.getMinDifficulty());
+        for (int i = 0; i < chain.getSize(); i++) {
+            Block blk = chain.getBlock(i);
+            Hash root = blk.getBodyRoot();
+            data.writeInt(blk.getAmount());
+            data.writeShort(blk.getDifficulty() | (root == null ? 0 : HAS_TRANSFERS));
+            data.writeLong(blk.getNonce());
+            if (root != null) {
+                data.write(root.getData());
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads headers written by writeHeaders, recomputing every hash and checking the
+     * links and proof of work as each header is read. Exactly the headers' bytes are
+     * read and the stream is not buffered here, as with read. The stream is not closed.
+     *
+     * @param in the stream to read from
+     * @return the headers read, genesis first
+     * @throws IOException if the stream cannot be read, is truncated, or holds an
+     *                     invalid header
+     */
+    public static List<BlockHeader> readHeaders(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != HEADER_MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Not a version " + VERSION + " header stream");
+        }
+        int count = data.readInt();
+        int minDifficulty = data.readInt();
+        if (count < 1) {
+            throw new IOException("Header stream has no genesis header");
+        }
+        List<BlockHeader> headers = new ArrayList<>();
+        Hash prevHash = null;
+        for (int i = 0; i < count; i++) {
+            int amount = data.readInt();
+            int difficulty = data.readUnsignedShort();
+            long nonce = data.readLong();
+            Hash root = null;
+            if ((difficulty & HAS_TRANSFERS) != 0) {
+                difficulty &= ~HAS_TRANSFERS;
+                byte[] bytes = new byte[32];
+                data.readFully(bytes);
+                root = new Hash(bytes);
+            }
+            if (difficulty > Hash.MAX_DIFFICULTY) {
+                throw new IOException("Header " + i + ": bad difficulty " + difficulty);
+            }
+            Hash hash = HashEngine.DEFAULT.newHasher(i, amount, prevHash, difficulty, root).hash(nonce);
+            BlockHeader header = new BlockHeader(i, amount, prevHash, difficulty, root, nonce, hash);
+            if (difficulty < minDifficulty || !hash.isValid(difficulty)) {
+                throw new IOException("Header " + i + ": Hash does not meet the required difficulty.");
+            }
+            headers.add(header);
+            prevHash = hash;
+        }
+        return headers;
+    }
+
+    /**
+     * Writes the chain to the channel block by block. The channel is not closed.
+     *
+     * @param chain   the chain to write
+     * @param channel the channel to write to
+     * @throws IOException if the channel cannot be written
+     */
+    public static void write(BlockChain chain, WritableByteChannel channel) throws IOException {
+        write(chain, Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Reads a chain written by write, recomputing and checking every block as it is
+     * read. Exactly the chain's bytes are read, so anything after it stays in the
+     * stream; the stream is not buffered here, so pass a buffered one when reading
+     * from a file or socket. The stream is not closed.
+     *
+     * @param in the stream to read from
+     * @return the chain read
+     * @throws IOException if the stream cannot be read, is truncated, or holds an
+     *                     invalid block
+     */
+    public static BlockChain read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Not a version " + VERSION + " chain stream");
+        }
+        int count = data.readInt();
+        int minDifficulty = data.readInt();
+        if (count < 1) {
+            throw new IOException("Chain stream has no genesis block");
+        }
+        BlockChain chain = null;
+        for (int i = 0; i < count; i++) {
+            try {
+                Block blk = readBlock(data, i, chain == null ? null : chain.getHash());
+                if (blk.getDifficulty() < minDifficulty || !blk.hasValidHash()) {
+                    throw new IllegalArgumentException("Hash does not meet the required difficulty.");
+                }
+                if (chain == null) {
+                    chain = new BlockChain(blk);
+                    chain.setMinDifficulty(minDifficulty);
+                } else {
+                    chain.append(blk);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Block " + i + ": " + e.getMessage(), e);
+            }
+        }
+        return chain;
+    }
+
+    /**
+     * Writes one block's amount, difficulty, nonce and transfers, if any.
+     *
+     * @param data the output to write to
+     * @param blk  the block to write
+     * @throws IOException if the output cannot be written
+     */
+    static void writeBlock(DataOutput data, Block blk) throws IOException {
+        TransferBatch transfers = blk.getTransfers();
+        data.writeInt(blk.getAmount());
+        int flags = transfers == null ? 0 : HAS_TRANSFERS;
+        data.writeShort(blk.getDifficulty() | flags);
+        data.writeLong(blk.getNonce());
+        if (transfers != null) {
+            data.writeInt(transfers.size());
+            for (int t = 0; t < transfers.size(); t++) {
+                data.writeInt(transfers.from(t));
+                data.writeInt(transfers.to(t));
+                data.writeInt(transfers.amount(t));
+            }
+        }
+    }
+
+    /**
+     * Reads a block written by writeBlock and recomputes its hash. The hash is not
+     * checked against the difficulty. Throws IllegalArgumentException if the fields
+     * do not make a block.
+     *
+     * @param data     the input to read from
+     * @param num      the block's number
+     * @param prevHash the previous block's hash (or null for start block)
+     * @return the block read
+     * @throws IOException if the input cannot be read or is truncated
+     */
+    static Block readBlock(DataInput data, int num, Hash prevHash) throws IOException {
+        int amount = data.readInt();
+        int difficulty = data.readUnsignedShort();
+        long nonce = data.readLong();
+        if ((difficulty & HAS_TRANSFERS) == 0) {
+            return new Block(num, amount, prevHash, difficulty, nonce);
+        }
+        int[][] transfers = readTransfers(data, num);
+        return new Block(num, new TransferBatch(transfers[0], transfers[1], transfers[2]),
+                prevHash, difficulty & ~HAS_TRANSFERS, nonce);
+    }
+
+    // Reads a transfer count and that many (payer, payee, amount) triples as three arrays.
+    private static int[][] readTransfers(DataInput data, int num) throws IOException {
+        int count = data.readInt();
+        if (count < 1 || count > MAX_TRANSFERS) {
+            throw new IOException("Block " + num + ": bad transfer count " + count);
+        }
+        int[][] columns = new int[3][count];
+        for (int t = 0; t < count; t++) {
+            columns[0][t] = data.readInt();
+            columns[1][t] = data.readInt();
+            columns[2][t] = data.readInt();
+        }
+        return columns;
+    }
+
+    /**
+     * Reads a chain written by write from the channel, through a buffer. A seekable
+     * channel, such as a FileChannel, is left positioned just after the chain; any
+     * other channel may have been read past it. The channel is not closed.
+     *
+     * @param channel the channel to read from
+     * @return the chain read
+     * @throws IOException if the channel cannot be read, is truncated, or holds an
+     *                     invalid block
+     */
+    public static BlockChain read(ReadableByteChannel channel) throws IOException {
+        InputStream buffered = new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+        if (!(channel instanceof SeekableByteChannel)) {
+            return read(buffered);
+        }
+        SeekableByteChannel seekable = (SeekableByteChannel) channel;
+        long start = seekable.position();
+        CountingInputStream counted = new CountingInputStream(buffered);
+        BlockChain chain = read(counted);
+        // Give back what the buffer read ahead.
+        seekable.position(start + counted.count);
+        return chain;
+    }
+
+    // Counts the bytes read through it.
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package edu.grinnell.csc207.blockchain;
+
+/**
+ * An immutable view of a ConcurrentBlockChain at one moment: its blocks, size, tip
+ * hash and Anna's and Bob's balances, all from the same version of the chain.
+ *
+ * Blocks are held in a chunked spine shared with later snapshots. A snapshot only
+ * reads slots below its size, which the writer never changes once published, so
+ * reading a snapshot needs no locks.
+ */
+public final class ChainSnapshot {
+    static final int CHUNK_SHIFT = 8;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final Block[][] spine;
+    private final int size;
+    private final int anna;
+    private final int bob;
+    private final int minDifficulty;
+
+    /**
+     * Constructs a snapshot of the first size blocks of the spine.
+     *
+     * @param spine         the chunks holding the blocks
+     * @param size          the number of blocks
+     * @param anna          Anna's balance after the tip
+     * @param bob           Bob's balance after the tip
+     * @param minDifficulty the chain's minimum difficulty
+     */
+    ChainSnapshot(Block[][] spine, int size, int anna, int bob, int minDifficulty) {
+        this.spine = spine;
+        this.size = size;
+        this.anna = anna;
+        this.bob = bob;
+        this.minDifficulty = minDifficulty;
+    }
+
+    /**
+     * Returns the number of blocks in this snapshot.
+     *
+     * @return the size of the chain
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the block with the given number.
+     *
+     * @param num the block number, from 0 (the genesis block) to getSize() - 1
+     * @return the block at that position
+     */
+    public Block getBlock(int num) {
+        if (num < 0 || num >= size) {
+            throw new IndexOutOfBoundsException("No block " + num + " in a chain of " + size);
+        }
+        return spine[num >>> CHUNK_SHIFT][num & CHUNK_MASK];
+    }
+
+    /**
+     * Returns the hash of the last block.
+     *
+     * @return the tip's hash
+     */
+    public Hash getHash() {
+        return getBlock(size - 1).getHash();
+    }
+
+    /**
+     * Returns the balances after the tip, index 0 being Anna's and index 1 Bob's.
+     *
+     * @return a new array holding Anna's and Bob's balances
+     */
+    public int[] getBalances() {
+        return new int[]{anna, bob};
+    }
+
+    /**
+     * Returns the number of the first block that breaks the hash chain or overdraws
+     * an account, or -1 if the snapshot is valid.
+     *
+     * @return the first invalid block number, or -1
+     */
+    public int firstInvalidBlock() {
+        Block[] blocks = new Block[size];
+        for (int c = 0; c << CHUNK_SHIFT < size; c++) {
+            int start = c << CHUNK_SHIFT;
+            System.arraycopy(spine[c], 0, blocks, start, Math.min(CHUNK_SIZE, size - start));
+        }
+        return ChainValidator.firstInvalidBlock(blocks, size, minDifficulty);
+    }
+
+    /**
+     * Validates the snapshot by checking the hash chain and transaction legality.
+     *
+     * @return true if the snapshot is valid, false otherwise
+     */
+    public boolean isValidBlockChain() {
+        return firstInvalidBlock() < 0;
+    }
+}
@@ -0,0 +1,228 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the first invalid block of a chain, either sequentially or on a fork/join pool.
+ *
+ * The parallel path splits the chain into fixed-size segments. A first pass sums the
+ * amounts of every segment in parallel; an exclusive prefix sum over those totals
+ * then gives the balances at the start of each segment, so a second parallel pass can
+ * check every segment independently with exactly the same per-block checks as the
+ * sequential path. The lowest failing index wins, so both paths agree on which block
+ * failed.
+ *
+ * Two-party blocks are replayed on plain ints. From the first block carrying a transfer
+ * batch on, balances move to a table of accounts; since segment sums cannot describe
+ * those, a chain containing any is checked sequentially.
+ */
+final class ChainValidator {
+    static final int SEGMENT_SIZE = 1 << 12;
+
+    private ChainValidator() {
+    }
+
+    /**
+     * Returns the number of the first invalid block, or -1 if the chain is valid.
+     *
+     * @param blocks        the blocks of the chain, genesis first
+     * @param size          the number of blocks in use
+     * @param minDifficulty the lowest difficulty a block may declare
+     * @return the first invalid block number, or -1
+     */
+    static int firstInvalidBlock(Block[] blocks, int size, int minDifficulty) {
+        // Initialize balances: Anna starts with the genesis amount, Bob with nothing.
+        return scan(blocks, 1, size, minDifficulty, blocks[0].getAmount(), 0);
+    }
+
+    /**
+     * Returns the number of the first invalid block, or -1 if the chain is valid,
+     * checking segments of the chain in parallel on the given pool.
+     *
+     * @param blocks        the blocks of the chain, genesis first
+     * @param size          the number of blocks in use
+     * @param minDifficulty the lowest difficulty a block may declare
+     * @param pool          the pool to run the checks on
+     * @return the first invalid block number, or -1
+     */
+    static int firstInvalidBlock(Block[] blocks, int size, int minDifficulty, ForkJoinPool pool) {
+        int segments = (size - 1 + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+        if (segments <= 1) {
+            return firstInvalidBlock(blocks, size, minDifficulty);
+        }
+        int[] sums = new int[segments];
+        boolean[] hasTransfers = new boolean[segments];
+        pool.invoke(new SumTask(blocks, size, sums, hasTransfers, 0, segments));
+        for (boolean transfers : hasTransfers) {
+            if (transfers) {
+                return firstInvalidBlock(blocks, size, minDifficulty);
+            }
+        }
+        // offsets[k] is the net amount moved from Bob to Anna before segment k.
+        int[] offsets = new int[segments];
+        for (int k = 1; k < segments; k++) {
+            offsets[k] = offsets[k - 1] + sums[k - 1];
+        }
+        AtomicInteger found = new AtomicInteger(Integer.MAX_VALUE);
+        return pool.invoke(new CheckTask(blocks, size, minDifficulty, offsets, 0, segments, found));
+    }
+
+    // Checks blocks [from, to) given the balances before block from.
+    // Returns the first failing block number, or -1.
+    private static int scan(Block[] blocks, int from, int to, int minDifficulty, int anna, int bob) {
+        for (int i = from; i < to; i++) {
+            Block blk = blocks[i];
+            if (!isLinked(blocks[i - 1], blk, minDifficulty)) {
+                return i;
+            }
+            if (blk.getTransfers() != null) {
+                return scanAccounts(blocks, i, to, minDifficulty, anna, bob);
+            }
+            // Process transaction.
+            int amt = blk.getAmount();
+            if (amt < 0) {
+                int transfer = Math.abs(amt);
+                if (anna < transfer) {
+                    return i;
+                }
+                anna -= transfer;
+                bob += transfer;
+            } else if (amt > 0) {
+                if (bob < amt) {
+                    return i;
+                }
+                bob -= amt;
+                anna += amt;
+            }
+        }
+        return -1;
+    }
+
+    // Checks blocks [from, to) like scan, keeping balances in a table of accounts
+    // seeded with Anna's and Bob's balances before block from.
+    private static int scanAccounts(Block[] blocks, int from, int to, int minDifficulty,
+            int anna, int bob) {
+        BalanceTable balances = new BalanceTable();
+        balances.add(TransferBatch.ANNA, anna);
+        balances.add(TransferBatch.BOB, bob);
+        for (int i = from; i < to; i++) {
+            if (!isLinked(blocks[i - 1], blocks[i], minDifficulty)
+                    || balances.apply(blocks[i]) != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Checks the number, hash link and difficulty of blk against the block before it.
+    private static boolean isLinked(Block prev, Block blk, int minDifficulty) {
+        // Check block number continuity.
+        if (blk.getNum() != prev.getNum() + 1) {
+            return false;
+        }
+        // Check previous hash link.
+        if (!blk.getPrevHash().equals(prev.getHash())) {
+            return false;
+        }
+        // Check that block’s hash meets its declared difficulty, and that is high enough.
+        return blk.getDifficulty() >= minDifficulty && blk.hasValidHash();
+    }
+
+    // First block number of segment k (block 0 is the genesis block and is never checked).
+    private static int segmentStart(int k) {
+        return 1 + k * SEGMENT_SIZE;
+    }
+
+    // Sums the amounts of each segment in [lo, hi) into sums, and marks the segments
+    // holding transfer blocks in hasTransfers.
+    private static final class SumTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Block[] blocks;
+        private final int size;
+        private final int[] sums;
+        private final boolean[] hasTransfers;
+        private final int lo;
+        private final int hi;
+
+        SumTask(Block[] blocks, int size, int[] sums, boolean[] hasTransfers, int lo, int hi) {
+            this.blocks = blocks;
+            this.size = size;
+            this.sums = sums;
+            this.hasTransfers = hasTransfers;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo == 1) {
+                int end = Math.min(size, segmentStart(lo + 1));
+                int sum = 0;
+                boolean transfers = false;
+                for (int i = segmentStart(lo); i < end; i++) {
+                    sum += blocks[i].getAmount();
+                    transfers |= blocks[i].getTransfers() != null;
+                }
+                sums[lo] = sum;
+                hasTransfers[lo] = transfers;
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new SumTask(blocks, size, sums, hasTransfers, lo, mid),
+                    new SumTask(blocks, size, sums, hasTransfers, mid, hi));
+        }
+    }
+
+    // Checks each segment in [lo, hi) and returns the first failing block number, or -1.
+    private static final class CheckTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Block[] blocks;
+        private final int size;
+        private final int minDifficulty;
+        private final int[] offsets;
+        private final int lo;
+        private final int hi;
+        private final AtomicInteger found;
+
+        CheckTask(Block[] blocks, int size, int minDifficulty, int[] offsets, int lo, int hi,
+                AtomicInteger found) {
+            this.blocks = blocks;
+            this.size = size;
+            this.minDifficulty = minDifficulty;
+            this.offsets = offsets;
+            this.lo = lo;
+            this.hi = hi;
+            this.found = found;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (hi - lo == 1) {
+                int start = segmentStart(lo);
+                // A lower failure is already known, so nothing here can be first.
+                if (start > found.get()) {
+                    return -1;
+                }
+                int anna = blocks[0].getAmount() + offsets[lo];
+                int bob = -offsets[lo];
+                int end = Math.min(size, segmentStart(lo + 1));
+                int result = scan(blocks, start, end, minDifficulty, anna, bob);
+                if (result >= 0) {
+                    found.accumulateAndGet(result, Math::min);
+                }
+                return result;
+            }
+            int mid = (lo + hi) >>> 1;
+            CheckTask left = new CheckTask(blocks, size, minDifficulty, offsets, lo, mid, found);
+            left.fork();
+            int right = new CheckTask(blocks, size, minDifficulty, offsets, mid, hi, found).compute();
+            int first = left.join();
+            return first >= 0 ? first : right;
+        }
+    }
+}
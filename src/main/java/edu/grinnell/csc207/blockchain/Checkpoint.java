@@ -0,0 +1,152 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A checksummed snapshot of a chain's height, tip hash and balances.
+ *
+ * When a chain is reopened from a BlockStore, blocks up to a checkpoint that matches
+ * the store are trusted as they are, and only blocks added after it are verified.
+ * The SHA-256 checksum guards against corruption of the checkpoint file, not against
+ * someone deliberately rewriting it together with the store.
+ */
+public final class Checkpoint {
+    private static final int MAGIC = 0x434B5054;
+    private static final int HASH_SIZE = 32;
+    private static final int BODY_SIZE = 16 + HASH_SIZE;
+
+    private final int height;
+    private final Hash tipHash;
+    private final int anna;
+    private final int bob;
+
+    /**
+     * Constructs a checkpoint for a chain of the given height.
+     *
+     * @param height  the number of blocks covered, genesis included
+     * @param tipHash the hash of block height - 1
+     * @param anna    Anna's balance after the tip block
+     * @param bob     Bob's balance after the tip block
+     */
+    Checkpoint(int height, Hash tipHash, int anna, int bob) {
+        if (tipHash.length() != HASH_SIZE) {
+            throw new IllegalArgumentException("Checkpoint tip hash must be 32 bytes");
+        }
+        this.height = height;
+        this.tipHash = tipHash;
+        this.anna = anna;
+        this.bob = bob;
+    }
+
+    /**
+     * Returns the number of blocks covered by this checkpoint.
+     *
+     * @return the checkpoint height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the hash of the last block covered by this checkpoint.
+     *
+     * @return the tip hash
+     */
+    public Hash getTipHash() {
+        return tipHash;
+    }
+
+    /**
+     * Returns Anna's balance at this checkpoint.
+     *
+     * @return Anna's balance
+     */
+    public int getAnna() {
+        return anna;
+    }
+
+    /**
+     * Returns Bob's balance at this checkpoint.
+     *
+     * @return Bob's balance
+     */
+    public int getBob() {
+        return bob;
+    }
+
+    /**
+     * Returns true if the store holds at least this checkpoint's blocks and its block
+     * at the checkpoint height ends in the checkpoint's tip hash.
+     *
+     * @param store the store to compare against
+     * @return true if this checkpoint describes a prefix of the store
+     */
+    public boolean matches(BlockStore store) {
+        return height >= 1 && height <= store.size()
+                && store.read(height - 1).getHash().equals(tipHash);
+    }
+
+    /**
+     * Writes this checkpoint to the given file, replacing any earlier one atomically.
+     *
+     * @param path the checkpoint file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path path) throws IOException {
+        byte[] body = body();
+        byte[] contents = ByteBuffer.allocate(4 + BODY_SIZE + HASH_SIZE)
+                .putInt(MAGIC).put(body).put(checksum(body)).array();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(tmp, contents);
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a checkpoint written by write(Path).
+     *
+     * @param path the checkpoint file
+     * @return the checkpoint
+     * @throws IOException if the file cannot be read or fails its checksum
+     */
+    public static Checkpoint read(Path path) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buf.remaining() != 4 + BODY_SIZE + HASH_SIZE || buf.getInt() != MAGIC) {
+            throw new IOException("Not a checkpoint file: " + path);
+        }
+        byte[] body = new byte[BODY_SIZE];
+        byte[] sum = new byte[HASH_SIZE];
+        buf.get(body).get(sum);
+        if (!Arrays.equals(sum, checksum(body))) {
+            throw new IOException("Checkpoint checksum mismatch: " + path);
+        }
+        ByteBuffer fields = ByteBuffer.wrap(body);
+        int height = fields.getInt();
+        int anna = fields.getInt();
+        int bob = fields.getInt();
+        fields.getInt();
+        byte[] tip = new byte[HASH_SIZE];
+        fields.get(tip);
+        return new Checkpoint(height, new Hash(tip), anna, bob);
+    }
+
+    // The checksummed fields: height, balances, a reserved word and the tip hash.
+    private byte[] body() {
+        return ByteBuffer.allocate(BODY_SIZE).putInt(height).putInt(anna).putInt(bob).putInt(0)
+                .put(tipHash.getData()).array();
+    }
+
+    private static byte[] checksum(byte[] body) {
+        try {
+            return MessageDigest.getInstance("sha-256").digest(body);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not found", e);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A two-party blockchain kept in off-heap columns, for chains too long to hold as
+ * Block objects.
+ *
+ * Blocks are stored in chunks of direct ByteBuffers, each holding a column of
+ * amounts, one of difficulties, one of nonces and one of 32-byte hashes. Block numbers
+ * are positions and previous hashes are the hash column one row up, so a block takes
+ * 48 bytes outside the heap and none on it. getBlock and getHash build Block and Hash
+ * objects from the columns on demand; they are short-lived copies, not stored blocks.
+ * Balances are kept as two running ints, and validation runs straight over the
+ * columns. Blocks carrying transfer batches cannot be stored.
+ */
+public class ColumnarBlockChain {
+    /** The log2 of the number of blocks per chunk used by default. */
+    static final int DEFAULT_CHUNK_SHIFT = 16;
+    /** Bytes of column data per block. */
+    static final int BYTES_PER_BLOCK = 48;
+
+    private final int chunkShift;
+    private final int chunkMask;
+    // Column offsets within a chunk.
+    private final int difficultyBase;
+    private final int nonceBase;
+    private final int hashBase;
+    private ByteBuffer[] chunks = new ByteBuffer[16];
+    private int chunkCount;
+    private int size;
+    private final int minDifficulty;
+    private int anna;
+    private int bob;
+
+    /**
+     * Constructs a chain with a single genesis block of the given difficulty, which
+     * also becomes the chain's minimum difficulty.
+     *
+     * @param initial    the initial non-negative amount
+     * @param difficulty the number of leading zero bits block hashes must have
+     */
+    public ColumnarBlockChain(int initial, int difficulty) {
+        this(new Block(0, initial, null, difficulty, new SequentialMiner()), DEFAULT_CHUNK_SHIFT);
+    }
+
+    /**
+     * Constructs a chain starting from an existing genesis block.
+     *
+     * @param start      the genesis block
+     * @param chunkShift the log2 of the number of blocks per chunk
+     */
+    ColumnarBlockChain(Block start, int chunkShift) {
+        if (start.getTransfers() != null) {
+            throw new IllegalArgumentException("The genesis block cannot carry transfers.");
+        }
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1 << chunkShift) - 1;
+        int rows = 1 << chunkShift;
+        difficultyBase = 4 * rows;
+        nonceBase = 8 * rows;
+        hashBase = 16 * rows;
+        minDifficulty = start.getDifficulty();
+        anna = start.getAmount();
+        put(start);
+    }
+
+    /**
+     * Returns a columnar copy of a chain, checking every block as append does.
+     *
+     * @param chain the chain to copy, which must not hold transfer blocks
+     * @return the copy
+     */
+    public static ColumnarBlockChain copyOf(BlockChain chain) {
+        ColumnarBlockChain copy = new ColumnarBlockChain(chain.getBlock(0), DEFAULT_CHUNK_SHIFT);
+        for (int i = 1; i < chain.getSize(); i++) {
+            copy.append(chain.getBlock(i));
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the size of the blockchain.
+     *
+     * @return the number of blocks
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the lowest difficulty a block may declare.
+     *
+     * @return the genesis block's difficulty
+     */
+    public int getMinDifficulty() {
+        return minDifficulty;
+    }
+
+    /**
+     * Returns a block built from the columns. Each call returns a new object.
+     *
+     * @param num the block number, from 0 to getSize() - 1
+     * @return the block
+     */
+    public Block getBlock(int num) {
+        if (num < 0 || num >= size) {
+            throw new IndexOutOfBoundsException("Block " + num + " is not in the chain.");
+        }
+        return new Block(num, amount(num), num == 0 ? null : hashAt(num - 1), difficulty(num),
+                nonce(num), hashAt(num));
+    }
+
+    /**
+     * Returns the hash of the last block in the chain.
+     *
+     * @return the tip's hash
+     */
+    public Hash getHash() {
+        return hashAt(size - 1);
+    }
+
+    /**
+     * Mines a new candidate block to be added to the end of the chain. The returned
+     * block is not added to the chain.
+     *
+     * @param amount the transaction amount
+     * @return the mined block
+     */
+    public Block mine(int amount) {
+        return new Block(size, amount, getHash(), minDifficulty, new SequentialMiner());
+    }
+
+    /**
+     * Appends a block to the chain. Throws IllegalArgumentException if it does not
+     * continue the numbering and hash link of the tip, meet its declared difficulty
+     * (at least the chain's minimum), or leave both balances non-negative, or if it
+     * carries transfers.
+     *
+     * @param blk the block to append
+     */
+    public void append(Block blk) {
+        if (blk.getTransfers() != null) {
+            throw new IllegalArgumentException("A columnar chain cannot hold transfer blocks.");
+        }
+        if (blk.getNum() != size) {
+            throw new IllegalArgumentException("Block number is incorrect.");
+        }
+        if (!isHashAt(size - 1, blk.getPrevHash())) {
+            throw new IllegalArgumentException("Previous hash does not match.");
+        }
+        if (blk.getDifficulty() < minDifficulty || !blk.hasValidHash()) {
+            throw new IllegalArgumentException("Hash does not meet the required difficulty.");
+        }
+        int amount = blk.getAmount();
+        if (anna + Math.min(amount, 0) < 0) {
+            throw new IllegalArgumentException("Insufficient funds for Anna.");
+        }
+        if (bob - Math.max(amount, 0) < 0) {
+            throw new IllegalArgumentException("Insufficient funds for Bob.");
+        }
+        anna += amount;
+        bob -= amount;
+        put(blk);
+    }
+
+    /**
+     * Removes the last block from the chain.
+     * Does nothing if the chain only contains the genesis block.
+     *
+     * @return true if a block was removed, false otherwise
+     */
+    public boolean removeLast() {
+        if (size == 1) {
+            return false;
+        }
+        size--;
+        int amount = amount(size);
+        anna -= amount;
+        bob += amount;
+        return true;
+    }
+
+    /**
+     * Returns Anna's and Bob's balances at the tip.
+     *
+     * @return a new array holding Anna's and Bob's balances
+     */
+    public int[] getBalances() {
+        return new int[]{anna, bob};
+    }
+
+    /**
+     * Recomputes Anna's and Bob's balances from the amount column.
+     *
+     * @return a new array holding Anna's and Bob's balances
+     */
+    public int[] computeBalances() {
+        int moved = 0;
+        for (int c = 0; c < chunkCount; c++) {
+            ByteBuffer chunk = chunks[c];
+            int rows = Math.min(chunkMask + 1, size - (c << chunkShift));
+            for (int r = c == 0 ? 1 : 0; r < rows; r++) {
+                moved += chunk.getInt(4 * r);
+            }
+        }
+        return new int[]{amount(0) + moved, -moved};
+    }
+
+    /**
+     * Returns the number of the first block whose hash does not meet its declared
+     * difficulty (or the chain's minimum), or that overdraws a balance, or -1 if the
+     * chain is valid. Hash links and numbers hold by construction.
+     *
+     * @return the first invalid block number, or -1
+     */
+    public int firstInvalidBlock() {
+        int a = amount(0);
+        int b = 0;
+        for (int i = 1; i < size; i++) {
+            int difficulty = difficulty(i);
+            if (difficulty < minDifficulty || leadingZeroBits(i) < difficulty) {
+                return i;
+            }
+            int amount = amount(i);
+            a += amount;
+            b -= amount;
+            if (a < 0 || b < 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if every block is valid, as firstInvalidBlock checks.
+     *
+     * @return true if the chain is valid
+     */
+    public boolean isValidBlockChain() {
+        return firstInvalidBlock() < 0;
+    }
+
+    /**
+     * Returns the number of bytes of direct memory the columns take up.
+     *
+     * @return the off-heap footprint in bytes
+     */
+    public long getOffHeapBytes() {
+        return (long) chunkCount * BYTES_PER_BLOCK << chunkShift;
+    }
+
+    // Writes a block into the next row, allocating a chunk when the last one is full.
+    private void put(Block blk) {
+        int c = size >>> chunkShift;
+        if (c == chunkCount) {
+            if (c == chunks.length) {
+                chunks = Arrays.copyOf(chunks, c * 2);
+            }
+            chunks[c] = ByteBuffer.allocateDirect(BYTES_PER_BLOCK << chunkShift);
+            chunkCount++;
+        }
+        ByteBuffer chunk = chunks[c];
+        int r = size & chunkMask;
+        chunk.putInt(4 * r, blk.getAmount());
+        chunk.putInt(difficultyBase + 4 * r, blk.getDifficulty());
+        chunk.putLong(nonceBase + 8 * r, blk.getNonce());
+        Hash hash = blk.getHash();
+        for (int w = 0; w < 4; w++) {
+            chunk.putLong(hashBase + 32 * r + 8 * w, hash.word(w));
+        }
+        size++;
+    }
+
+    private int amount(int num) {
+        return chunks[num >>> chunkShift].getInt(4 * (num & chunkMask));
+    }
+
+    private int difficulty(int num) {
+        return chunks[num >>> chunkShift].getInt(difficultyBase + 4 * (num & chunkMask));
+    }
+
+    private long nonce(int num) {
+        return chunks[num >>> chunkShift].getLong(nonceBase + 8 * (num & chunkMask));
+    }
+
+    private long hashWord(int num, int w) {
+        return chunks[num >>> chunkShift].getLong(hashBase + 32 * (num & chunkMask) + 8 * w);
+    }
+
+    private Hash hashAt(int num) {
+        return new Hash(hashWord(num, 0), hashWord(num, 1), hashWord(num, 2), hashWord(num, 3));
+    }
+
+    // Compares a stored hash with a Hash word by word, without building one.
+    private boolean isHashAt(int num, Hash hash) {
+        if (hash == null || hash.length() != 32) {
+            return false;
+        }
+        for (int w = 0; w < 4; w++) {
+            if (hashWord(num, w) != hash.word(w)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int leadingZeroBits(int num) {
+        int bits = 0;
+        for (int w = 0; w < 4; w++) {
+            long word = hashWord(num, w);
+            bits += Long.numberOfLeadingZeros(word);
+            if (word != 0) {
+                break;
+            }
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,148 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A blockchain that many threads can read while one thread at a time changes it.
+ *
+ * Writers serialize on the chain's lock and validate against a private BlockChain.
+ * After each change they publish a new immutable ChainSnapshot through a volatile
+ * field, so readers never lock and always see a consistent size, tip, balances and
+ * block sequence, even while appends continue. The snapshot's blocks live in
+ * fixed-size chunks: appending writes into the tail chunk in place, copying only
+ * the spine when a chunk is added, and a slot an older snapshot may still see is
+ * never overwritten; its chunk is copied first.
+ */
+public class ConcurrentBlockChain {
+    private final BlockChain chain;
+    private Block[][] spine = new Block[0][];
+    // Slots at or above this index have never been visible to a published snapshot.
+    private int highWater;
+    private volatile ChainSnapshot current;
+
+    /**
+     * Constructs a concurrent chain holding the blocks of the given chain, which it
+     * takes over: the chain must not be used directly afterwards.
+     *
+     * @param chain the chain to take over
+     */
+    public ConcurrentBlockChain(BlockChain chain) {
+        this.chain = chain;
+        synchronized (this) {
+            for (int i = 0; i < chain.getSize(); i++) {
+                put(i, chain.getBlock(i));
+            }
+            publish();
+        }
+    }
+
+    /**
+     * Returns the latest published snapshot, without locking.
+     *
+     * @return the current snapshot
+     */
+    public ChainSnapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Returns the number of blocks in the latest snapshot.
+     *
+     * @return the size of the chain
+     */
+    public int getSize() {
+        return current.getSize();
+    }
+
+    /**
+     * Returns the hash of the tip of the latest snapshot.
+     *
+     * @return the last block's hash
+     */
+    public Hash getHash() {
+        return current.getHash();
+    }
+
+    /**
+     * Mines a new candidate block for the given amount on top of the latest snapshot.
+     * Mining happens outside the lock, so the block may no longer fit by the time
+     * it is appended.
+     *
+     * @param amount the transaction amount
+     * @param miner  the strategy used to search for the nonce
+     * @return the mined block
+     */
+    public Block mine(int amount, Miner miner) {
+        ChainSnapshot snap;
+        int difficulty;
+        synchronized (this) {
+            snap = current;
+            difficulty = chain.nextDifficulty();
+        }
+        return new Block(snap.getSize(), amount, snap.getHash(), difficulty, miner);
+    }
+
+    /**
+     * Appends a block, as BlockChain.append does, and publishes the new snapshot.
+     *
+     * @param blk the block to append
+     */
+    public synchronized void append(Block blk) {
+        chain.append(blk);
+        put(blk.getNum(), blk);
+        publish();
+    }
+
+    /**
+     * Appends a batch of blocks atomically, as BlockChain.appendAll does. Readers see
+     * either none or all of the batch.
+     *
+     * @param batch the blocks to append, in order
+     */
+    public synchronized void appendAll(List<Block> batch) {
+        chain.appendAll(batch);
+        for (Block blk : batch) {
+            put(blk.getNum(), blk);
+        }
+        publish();
+    }
+
+    /**
+     * Removes the last block and publishes the new snapshot. Does nothing if the
+     * chain only contains the genesis block.
+     *
+     * @return true if a block was removed, false otherwise
+     */
+    public synchronized boolean removeLast() {
+        if (!chain.removeLast()) {
+            return false;
+        }
+        publish();
+        return true;
+    }
+
+    // Stores a block in slot i of the spine without disturbing published snapshots.
+    private void put(int i, Block blk) {
+        int c = i >>> ChainSnapshot.CHUNK_SHIFT;
+        if (c == spine.length) {
+            spine = Arrays.copyOf(spine, c + 1);
+            spine[c] = new Block[ChainSnapshot.CHUNK_SIZE];
+        } else if (i < highWater) {
+            // An older, longer snapshot may see this slot: copy its chunk, and drop the
+            // chunks after it, which such snapshots may see too.
+            spine = Arrays.copyOf(spine, c + 1);
+            spine[c] = spine[c].clone();
+            highWater = i;
+        }
+        spine[c][i & (ChainSnapshot.CHUNK_SIZE - 1)] = blk;
+    }
+
+    private void publish() {
+        int size = chain.getSize();
+        int[] balances = chain.getBalances();
+        highWater = Math.max(highWater, size);
+        current = new ChainSnapshot(spine, size, balances[0], balances[1],
+                chain.getMinDifficulty());
+    }
+}
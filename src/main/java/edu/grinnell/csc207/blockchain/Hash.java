@@ -1,39 +1,163 @@
 package edu.grinnell.csc207.blockchain;
 
-import java.util.Arrays;
-
 /**
- * A wrapper class over a hash value (a byte array).
+ * An immutable hash value of up to 256 bits.
+ *
+ * The bytes are packed big-endian into four longs, so comparisons work a word at a
+ * time and no array is shared with callers. The hexadecimal form is built from a
+ * lookup table the first time it is needed and cached.
  */
 public class Hash {
+    /**
+     * The default difficulty: the first three bytes must be zero.
+     */
+    public static final int DEFAULT_DIFFICULTY = 24;
+
+    /**
+     * The highest possible difficulty: every bit must be zero.
+     */
+    public static final int MAX_DIFFICULTY = 256;
+
+    private static final int MAX_BYTES = 32;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final long w0;
+    private final long w1;
+    private final long w2;
+    private final long w3;
+    private final int length;
+    private String hex;
 
-    private byte[] hash;
     /**
      * Constructs a new Hash object that contains the given hash (as an array of bytes).
-     * 
-     * @param the hash data in byte form
+     * The bytes are copied, so later changes to the array do not affect the hash.
+     *
+     * @param data the hash data in byte form, at most 32 bytes
      */
     public Hash(byte[] data){
-        hash = data; // error: cannot convert from byte[] to Hash val
-    } 
+        if (data.length > MAX_BYTES) {
+            throw new IllegalArgumentException("A hash holds at most 32 bytes");
+        }
+        long[] words = new long[4];
+        for (int i = 0; i < data.length; i++) {
+            words[i >> 3] |= (data[i] & 0xFFL) << (56 - 8 * (i & 7));
+        }
+        w0 = words[0];
+        w1 = words[1];
+        w2 = words[2];
+        w3 = words[3];
+        length = data.length;
+    }
+
+    /**
+     * Constructs a 32-byte hash from its four big-endian words.
+     *
+     * @param w0 bytes 0 to 7
+     * @param w1 bytes 8 to 15
+     * @param w2 bytes 16 to 23
+     * @param w3 bytes 24 to 31
+     */
+    Hash(long w0, long w1, long w2, long w3) {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+        this.length = MAX_BYTES;
+    }
 
     /**
-     * Returns the hash contained in this object.
+     * Returns a copy of the hash contained in this object.
      *
      * @return the hash contained in this object
      */
     public byte[] getData(){
-        return hash;
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (word(i >> 3) >>> (56 - 8 * (i & 7)));
+        }
+        return data;
+    }
+
+    /**
+     * Returns the number of bytes in this hash.
+     *
+     * @return the hash length in bytes
+     */
+    int length() {
+        return length;
     }
 
     /**
-     * Returns true if this hash meets the criteria for validity, i.e., its first three indices contain zeroes.
+     * Returns one of the four big-endian words holding the hash bytes. Bytes past
+     * the end of a short hash read as zero.
+     *
+     * @param i the word index, from 0 to 3
+     * @return the word
+     */
+    long word(int i) {
+        switch (i) {
+            case 0:
+                return w0;
+            case 1:
+                return w1;
+            case 2:
+                return w2;
+            default:
+                return w3;
+        }
+    }
+
+    /**
+     * Returns the number of leading zero bits in this hash.
+     *
+     * @return the leading zero bit count, at most 8 times the length
+     */
+    int leadingZeroBits() {
+        int bits;
+        if (w0 != 0) {
+            bits = Long.numberOfLeadingZeros(w0);
+        } else if (w1 != 0) {
+            bits = 64 + Long.numberOfLeadingZeros(w1);
+        } else if (w2 != 0) {
+            bits = 128 + Long.numberOfLeadingZeros(w2);
+        } else {
+            bits = 192 + Long.numberOfLeadingZeros(w3);
+        }
+        return Math.min(bits, 8 * length);
+    }
+
+    /**
+     * Returns true if this hash meets the default criteria for validity, i.e., its first three indices contain zeroes.
      *
      * @return true or false depending on if it meets criteria
      */
     public boolean isValid(){
-        if(hash.length < 3) return false;
-        return hash[0] == 0 && hash[1] == 0 && hash[2] == 0;
+        return isValid(DEFAULT_DIFFICULTY);
+    }
+
+    /**
+     * Returns true if this hash starts with at least the given number of zero bits.
+     *
+     * @param difficulty the number of leading zero bits required
+     * @return true or false depending on if it meets criteria
+     */
+    public boolean isValid(int difficulty){
+        return leadingZeroBits() >= difficulty;
+    }
+
+    // Checks the validity criteria directly on raw digest bytes, so mining needs no Hash object.
+    static boolean isValid(byte[] data, int difficulty) {
+        if (8 * data.length < difficulty) {
+            return false;
+        }
+        int full = difficulty >>> 3;
+        for (int i = 0; i < full; i++) {
+            if (data[i] != 0) {
+                return false;
+            }
+        }
+        int rest = difficulty & 7;
+        return rest == 0 || (data[full] & 0xFF) >>> (8 - rest) == 0;
     }
 
     /**
@@ -42,13 +166,19 @@ public class Hash {
      * @return the string representation of the hash
      */
     public String toString(){
-        StringBuilder sb = new StringBuilder();
-        for (byte b : hash) {
-            sb.append(String.format("%02x", Byte.toUnsignedInt(b)));
+        String s = hex;
+        if (s == null) {
+            char[] digits = new char[2 * length];
+            for (int i = 0; i < length; i++) {
+                int b = (int) (word(i >> 3) >>> (56 - 8 * (i & 7))) & 0xFF;
+                digits[2 * i] = HEX_DIGITS[b >>> 4];
+                digits[2 * i + 1] = HEX_DIGITS[b & 0xF];
+            }
+            s = new String(digits);
+            hex = s;
         }
-        return sb.toString();
+        return s;
     }
-    // Str -> Byte Arr -> Str
 
     /**
      * returns true if this hash is structurally equal to the other object.
@@ -64,11 +194,12 @@ public class Hash {
             return false;
         }
         Hash o = (Hash) other;
-        return Arrays.equals(this.hash, o.hash);
+        return w3 == o.w3 && w2 == o.w2 && w1 == o.w1 && w0 == o.w0 && length == o.length;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(hash);
+        // The low words vary most, since valid hashes start with zero bytes.
+        return Long.hashCode(w3 ^ (w2 * 31) ^ (w1 * 961) ^ w0) ^ length;
     }
 }
@@ -0,0 +1,35 @@
+package edu.grinnell.csc207.blockchain;
+
+/**
+ * A SHA-256 implementation for block headers, which makes a BlockHasher for each
+ * header. Every engine computes the same hashes.
+ *
+ * Blocks use DEFAULT, which is JCA unless the JVM is started with
+ * -Dblockchain.hashEngine=specialized. JCA wins wherever the JIT compiles
+ * MessageDigest down to the CPU's SHA instructions; SPECIALIZED is faster where it
+ * cannot, since it skips the padding and the work shared by every nonce.
+ */
+interface HashEngine {
+    /** Hashes the encoded header with the platform's MessageDigest. */
+    HashEngine JCA = JcaBlockHasher::new;
+
+    /** Hashes straight from the header fields with a SHA-256 specialized for them. */
+    HashEngine SPECIALIZED = Sha256BlockHasher::forHeader;
+
+    /** The engine blocks are hashed with. */
+    HashEngine DEFAULT =
+            "specialized".equalsIgnoreCase(System.getProperty("blockchain.hashEngine"))
+                    ? SPECIALIZED : JCA;
+
+    /**
+     * Returns a hasher for the block with the given header fields and body root.
+     *
+     * @param num        the block number
+     * @param amount     the dollar amount transferred
+     * @param prevHash   the previous block's hash (or null for start block)
+     * @param difficulty the number of leading zero bits a valid hash must have
+     * @param body       the Merkle root of the block's transfers (or null if it has none)
+     * @return a hasher trying nonces for that header
+     */
+    BlockHasher newHasher(int num, int amount, Hash prevHash, int difficulty, Hash body);
+}
@@ -0,0 +1,127 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing index from block hashes to block numbers.
+ *
+ * Each slot holds a 64-bit key folded from the hash's four words and the block
+ * number as an int, in two parallel primitive arrays, so nothing is boxed. Keys may
+ * collide, so a lookup confirms a match against the block's full hash. Slots are
+ * probed linearly and the table doubles once it is half full, so it costs 12 bytes
+ * per slot, or 24 to 48 bytes per indexed block.
+ */
+class HashIndex {
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 32;
+
+    private long[] keys;
+    private int[] nums;
+    private int count;
+
+    /**
+     * Constructs an empty index.
+     */
+    HashIndex() {
+        keys = new long[INITIAL_CAPACITY];
+        nums = new int[INITIAL_CAPACITY];
+        Arrays.fill(nums, EMPTY);
+    }
+
+    /**
+     * Adds a block's hash to the index.
+     *
+     * @param hash the block's hash
+     * @param num  the block's number
+     */
+    void add(Hash hash, int num) {
+        if (2 * (count + 1) > keys.length) {
+            resize(keys.length * 2);
+        }
+        insert(key(hash), num);
+        count++;
+    }
+
+    /**
+     * Removes a block from the index.
+     *
+     * @param hash the block's hash
+     * @param num  the block's number
+     */
+    void remove(Hash hash, int num) {
+        int mask = keys.length - 1;
+        int slot = slot(key(hash), mask);
+        while (nums[slot] != num) {
+            if (nums[slot] == EMPTY) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        nums[slot] = EMPTY;
+        count--;
+        // Shift later entries of the probe run back so lookups never stop early.
+        int hole = slot;
+        for (int i = (slot + 1) & mask; nums[i] != EMPTY; i = (i + 1) & mask) {
+            int home = slot(keys[i], mask);
+            // Move the entry unless its home lies cyclically in (hole, i].
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                nums[hole] = nums[i];
+                nums[i] = EMPTY;
+                hole = i;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of a block with the given hash, or -1 if there is none.
+     *
+     * @param hash   the hash to look for
+     * @param blocks the indexed blocks, by number
+     * @return the block number, or -1
+     */
+    int find(Hash hash, Block[] blocks) {
+        long key = key(hash);
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); nums[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key && blocks[nums[slot]].getHash().equals(hash)) {
+                return nums[slot];
+            }
+        }
+        return -1;
+    }
+
+    private void insert(long key, int num) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (nums[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        nums[slot] = num;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldNums = nums;
+        keys = new long[capacity];
+        nums = new int[capacity];
+        Arrays.fill(nums, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldNums[i] != EMPTY) {
+                insert(oldKeys[i], oldNums[i]);
+            }
+        }
+    }
+
+    // Folds all four words, since valid hashes start with zero bytes and short
+    // hashes end with them.
+    private static long key(Hash hash) {
+        return hash.word(0) ^ hash.word(1) ^ hash.word(2) ^ hash.word(3);
+    }
+
+    // Fibonacci hashing spreads the key over the table.
+    private static int slot(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
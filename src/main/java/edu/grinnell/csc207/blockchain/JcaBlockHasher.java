@@ -0,0 +1,89 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hashes the header of a single block for many different nonces with the platform's
+ * SHA-256 MessageDigest.
+ *
+ * The nonce-independent prefix (number, amount, previous hash, difficulty and, for a block
+ * carrying a transfer batch, the batch's Merkle root) is encoded once
+ * into a preallocated input buffer and each attempt only overwrites the trailing
+ * nonce bytes. Digests are reused per thread and written into a preallocated output
+ * buffer, so trying a nonce allocates nothing; a Hash is only created on request.
+ * A hasher is not thread-safe, so every mining thread uses its own.
+ */
+class JcaBlockHasher implements BlockHasher {
+    private static final ThreadLocal<MessageDigest> DIGEST =
+            ThreadLocal.withInitial(JcaBlockHasher::newDigest);
+
+    private final byte[] input;
+    private final int nonceOffset;
+    private final int difficulty;
+    private final byte[] output = new byte[32];
+
+    /**
+     * Constructs a hasher for the block with the given header fields and body root.
+     *
+     * @param num        the block number
+     * @param amount     the dollar amount transferred
+     * @param prevHash   the previous block's hash (or null for start block)
+     * @param difficulty the number of leading zero bits a valid hash must have
+     * @param body       the Merkle root of the block's transfers (or null if it has none)
+     */
+    JcaBlockHasher(int num, int amount, Hash prevHash, int difficulty, Hash body) {
+        byte[] prev = prevHash == null ? new byte[0] : prevHash.getData();
+        byte[] bodyBytes = body == null ? new byte[0] : body.getData();
+        input = new byte[8 + prev.length + 4 + bodyBytes.length + 8];
+        putInt(input, 0, num);
+        putInt(input, 4, amount);
+        System.arraycopy(prev, 0, input, 8, prev.length);
+        putInt(input, 8 + prev.length, difficulty);
+        System.arraycopy(bodyBytes, 0, input, 12 + prev.length, bodyBytes.length);
+        nonceOffset = 12 + prev.length + bodyBytes.length;
+        this.difficulty = difficulty;
+    }
+
+    @Override
+    public boolean isValidNonce(long nonce) {
+        digest(nonce);
+        return Hash.isValid(output, difficulty);
+    }
+
+    @Override
+    public Hash hash(long nonce) {
+        digest(nonce);
+        return new Hash(output);
+    }
+
+    // Writes the digest of the header with the given nonce into the output buffer.
+    private void digest(long nonce) {
+        putInt(input, nonceOffset, (int) (nonce >>> 32));
+        putInt(input, nonceOffset + 4, (int) nonce);
+        MessageDigest md = DIGEST.get();
+        md.update(input);
+        try {
+            md.digest(output, 0, output.length);
+        } catch (DigestException e) {
+            throw new IllegalStateException("SHA-256 digest does not fit", e);
+        }
+    }
+
+    // Writes a big-endian int, matching ByteBuffer.putInt.
+    private static void putInt(byte[] buf, int off, int value) {
+        buf[off] = (byte) (value >>> 24);
+        buf[off + 1] = (byte) (value >>> 16);
+        buf[off + 2] = (byte) (value >>> 8);
+        buf[off + 3] = (byte) value;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("sha-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not found", e);
+        }
+    }
+}
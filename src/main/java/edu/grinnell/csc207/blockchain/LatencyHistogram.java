@@ -0,0 +1,71 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations in power-of-two nanosecond buckets.
+ *
+ * Bucket b counts durations d with 2^b <= d < 2^(b+1) (bucket 0 also holds 0), so
+ * percentiles are reported as the upper end of their bucket (capped at the maximum),
+ * within a factor of two.
+ * Recording is a couple of LongAdder increments, which stay cheap under contention.
+ */
+final class LatencyHistogram {
+    private final LongAdder[] buckets = new LongAdder[64];
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructs an empty histogram.
+     */
+    LatencyHistogram() {
+        for (int b = 0; b < buckets.length; b++) {
+            buckets[b] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one duration.
+     *
+     * @param nanos the duration in nanoseconds, negative values counting as 0
+     */
+    void record(long nanos) {
+        long d = Math.max(0, nanos);
+        buckets[63 - Long.numberOfLeadingZeros(d | 1)].increment();
+        total.add(d);
+        max.accumulate(d);
+    }
+
+    /**
+     * Returns the counts, mean, median, 99th percentile and maximum recorded so far.
+     * Concurrent recording may make the figures slightly inconsistent with each other.
+     *
+     * @return a snapshot of the histogram
+     */
+    LatencySnapshot snapshot() {
+        long[] counts = new long[buckets.length];
+        long count = 0;
+        for (int b = 0; b < buckets.length; b++) {
+            counts[b] = buckets[b].sum();
+            count += counts[b];
+        }
+        long mean = count == 0 ? 0 : total.sum() / count;
+        long longest = max.get();
+        return new LatencySnapshot(count, mean, Math.min(longest, percentile(counts, count, 0.5)),
+                Math.min(longest, percentile(counts, count, 0.99)), longest);
+    }
+
+    // Returns the upper end of the bucket holding the q-th quantile.
+    private static long percentile(long[] counts, long count, double q) {
+        long rank = (long) Math.ceil(q * count);
+        long seen = 0;
+        for (int b = 0; b < counts.length; b++) {
+            seen += counts[b];
+            if (seen >= rank && seen > 0) {
+                return (1L << (b + 1)) - 1;
+            }
+        }
+        return 0;
+    }
+}
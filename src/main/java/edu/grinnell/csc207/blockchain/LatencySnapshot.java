@@ -0,0 +1,89 @@
+package edu.grinnell.csc207.blockchain;
+
+import javax.management.ConstructorParameters;
+
+/**
+ * Summary of the durations recorded by one latency histogram, in nanoseconds.
+ * Percentiles are accurate to within a factor of two.
+ */
+public final class LatencySnapshot {
+    private final long count;
+    private final long meanNanos;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long maxNanos;
+
+    /**
+     * Constructs a snapshot from its figures.
+     *
+     * @param count     the number of durations recorded
+     * @param meanNanos the mean duration
+     * @param p50Nanos  the median duration
+     * @param p99Nanos  the 99th percentile duration
+     * @param maxNanos  the longest duration
+     */
+    @ConstructorParameters({"count", "meanNanos", "p50Nanos", "p99Nanos", "maxNanos"})
+    public LatencySnapshot(long count, long meanNanos, long p50Nanos, long p99Nanos, long maxNanos) {
+        this.count = count;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * Returns the number of durations recorded.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean duration.
+     *
+     * @return the mean in nanoseconds
+     */
+    public long getMeanNanos() {
+        return meanNanos;
+    }
+
+    /**
+     * Returns the median duration.
+     *
+     * @return the median in nanoseconds
+     */
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    /**
+     * Returns the 99th percentile duration.
+     *
+     * @return the 99th percentile in nanoseconds
+     */
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /**
+     * Returns the longest duration.
+     *
+     * @return the maximum in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Returns the figures on one line, in microseconds.
+     *
+     * @return the snapshot as a string
+     */
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus", count,
+                meanNanos / 1e3, p50Nanos / 1e3, p99Nanos / 1e3, maxNanos / 1e3);
+    }
+}
@@ -0,0 +1,253 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pending transfers waiting to be put into blocks of a chain, submitted from any
+ * number of threads.
+ *
+ * A transfer is accepted only if its payer can cover it from the chain's balance
+ * minus every transfer the payer already has pending, so funds that have not been
+ * confirmed yet cannot be spent. Every set of accepted transfers is then affordable
+ * in any order, and a BlockProducer can take them in arrival order or by priority,
+ * highest first with ties in arrival order. While a producer runs, it is the only
+ * one to change the chain, and it does so holding the pool's lock.
+ */
+public class Mempool {
+    /**
+     * The order in which pending transfers are put into blocks.
+     */
+    public enum Ordering {
+        /** Oldest first. */
+        ARRIVAL,
+        /** Highest priority first, oldest first among equal priorities. */
+        PRIORITY
+    }
+
+    private final BlockChain chain;
+    private final int capacity;
+    private final PriorityQueue<Pending> queue;
+    // Amounts each account has pending, queued or in a block being mined.
+    private final BalanceTable debits = new BalanceTable();
+    private long arrivals;
+
+    /**
+     * Constructs an empty pool for the given chain.
+     *
+     * @param chain    the chain the transfers will be appended to
+     * @param ordering the order transfers are taken in
+     * @param capacity the most transfers queued at a time
+     */
+    public Mempool(BlockChain chain, Ordering ordering, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.chain = chain;
+        this.capacity = capacity;
+        Comparator<Pending> byArrival = Comparator.comparingLong(p -> p.arrival);
+        this.queue = new PriorityQueue<>(ordering == Ordering.ARRIVAL ? byArrival
+                : Comparator.comparingInt((Pending p) -> p.priority).reversed().thenComparing(byArrival));
+    }
+
+    /**
+     * Submits a transfer of priority 0.
+     *
+     * @param from   the paying account
+     * @param to     the receiving account
+     * @param amount the positive amount
+     * @return a future completed with the number of the block holding the transfer
+     */
+    public CompletableFuture<Integer> submit(int from, int to, int amount) {
+        return submit(from, to, amount, 0);
+    }
+
+    /**
+     * Submits a transfer. Throws IllegalArgumentException if it is malformed or its
+     * payer cannot cover it, and RejectedExecutionException if the pool is full.
+     *
+     * @param from     the paying account
+     * @param to       the receiving account
+     * @param amount   the positive amount
+     * @param priority how early the transfer is taken under PRIORITY ordering
+     * @return a future completed with the number of the block holding the transfer,
+     *         or exceptionally if that block could not be appended
+     */
+    public synchronized CompletableFuture<Integer> submit(int from, int to, int amount,
+            int priority) {
+        if (amount <= 0 || from == to || from < 0 || to < 0) {
+            Metrics.transactionRejected();
+            throw new IllegalArgumentException("Transfer is malformed.");
+        }
+        if (queue.size() >= capacity) {
+            Metrics.transactionRejected();
+            throw new RejectedExecutionException("Mempool is full");
+        }
+        int pending = debits.get(from);
+        if ((long) pending + amount > chain.getBalance(from)) {
+            Metrics.transactionRejected();
+            throw new IllegalArgumentException("Insufficient funds for account " + from + ".");
+        }
+        debits.add(from, amount);
+        Pending transfer = new Pending(from, to, amount, priority, arrivals++);
+        queue.add(transfer);
+        notifyAll();
+        return transfer.result;
+    }
+
+    /**
+     * Returns the number of transfers waiting to be taken.
+     *
+     * @return the queue length
+     */
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    /**
+     * Removes up to max transfers in the pool's order, waiting for at least one.
+     *
+     * @param max     the most transfers to take
+     * @param timeout how long to wait, in milliseconds
+     * @return the transfers taken, empty if none arrived in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized List<Pending> take(int max, long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (queue.isEmpty()) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                return new ArrayList<>();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        List<Pending> taken = new ArrayList<>(Math.min(max, queue.size()));
+        while (taken.size() < max && !queue.isEmpty()) {
+            Pending transfer = queue.poll();
+            Metrics.queued(transfer.submitted);
+            taken.add(transfer);
+        }
+        return taken;
+    }
+
+    /**
+     * Appends a mined block holding the given transfers and settles them: their
+     * futures complete with the block number, or exceptionally with the reason the
+     * block was refused. Either way the transfers stop counting against their payers.
+     *
+     * @param blk      the block to append
+     * @param included the transfers the block holds
+     * @return true if the block was appended
+     */
+    boolean appendAndSettle(Block blk, List<Pending> included) {
+        RuntimeException failure = null;
+        synchronized (this) {
+            try {
+                chain.append(blk);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            for (Pending transfer : included) {
+                debits.add(transfer.from, -transfer.amount);
+            }
+        }
+        // Complete the futures outside the lock, since callers may chain work onto them.
+        for (Pending transfer : included) {
+            if (failure == null) {
+                Metrics.confirmed(transfer.submitted);
+                transfer.result.complete(blk.getNum());
+            } else {
+                transfer.result.completeExceptionally(failure);
+            }
+        }
+        return failure == null;
+    }
+
+    /**
+     * Fails transfers that were taken but will not be appended, so they stop
+     * counting against their payers.
+     *
+     * @param taken  the transfers
+     * @param reason the exception to complete their futures with
+     */
+    void fail(List<Pending> taken, RuntimeException reason) {
+        synchronized (this) {
+            for (Pending transfer : taken) {
+                debits.add(transfer.from, -transfer.amount);
+            }
+        }
+        for (Pending transfer : taken) {
+            transfer.result.completeExceptionally(reason);
+        }
+    }
+
+    /**
+     * Fails every queued transfer, for when no producer will take them.
+     *
+     * @param reason the exception to complete their futures with
+     */
+    void cancelAll(RuntimeException reason) {
+        List<Pending> dropped;
+        synchronized (this) {
+            dropped = new ArrayList<>(queue);
+            queue.clear();
+        }
+        fail(dropped, reason);
+    }
+
+    /**
+     * Returns the chain the transfers are appended to.
+     *
+     * @return the pool's chain
+     */
+    BlockChain getChain() {
+        return chain;
+    }
+
+    /**
+     * Returns a batch holding the given transfers in order.
+     *
+     * @param transfers the transfers, at least one
+     * @return the batch
+     */
+    static TransferBatch toBatch(List<Pending> transfers) {
+        int n = transfers.size();
+        int[] from = new int[n];
+        int[] to = new int[n];
+        int[] amounts = new int[n];
+        for (int i = 0; i < n; i++) {
+            Pending transfer = transfers.get(i);
+            from[i] = transfer.from;
+            to[i] = transfer.to;
+            amounts[i] = transfer.amount;
+        }
+        return new TransferBatch(from, to, amounts);
+    }
+
+    /**
+     * A submitted transfer and the future its submitter waits on.
+     */
+    static final class Pending {
+        final int from;
+        final int to;
+        final int amount;
+        final int priority;
+        final long arrival;
+        // The time returned by Metrics.start() on submission.
+        final long submitted = Metrics.start();
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        Pending(int from, int to, int amount, int priority, long arrival) {
+            this.from = from;
+            this.to = to;
+            this.amount = amount;
+            this.priority = priority;
+            this.arrival = arrival;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Proof that one transfer is part of a batch with a given Merkle root.
+ *
+ * Leaves are SHA-256(0x00 || payer || payee || amount) and inner nodes are
+ * SHA-256(0x01 || left || right), so a leaf can never pass for an inner node. A level
+ * with an odd number of nodes promotes its last node unchanged. A proof holds the
+ * transfer, its index, the batch size and the sibling hashes on its path to the root,
+ * which is at most ceil(log2 n) hashes.
+ */
+public final class MerkleProof {
+    private static final int HASH_SIZE = 32;
+    private static final byte LEAF = 0;
+    private static final byte NODE = 1;
+
+    private final int index;
+    private final int leafCount;
+    private final int from;
+    private final int to;
+    private final int amount;
+    private final Hash[] siblings;
+
+    /**
+     * Constructs a proof for the transfer at index of a batch with leafCount transfers.
+     *
+     * @param index     the transfer's position in its batch
+     * @param leafCount the number of transfers in the batch
+     * @param from      the paying account
+     * @param to        the receiving account
+     * @param amount    the amount moved
+     * @param siblings  the sibling hashes from the leaf up to the root
+     */
+    MerkleProof(int index, int leafCount, int from, int to, int amount, Hash[] siblings) {
+        this.index = index;
+        this.leafCount = leafCount;
+        this.from = from;
+        this.to = to;
+        this.amount = amount;
+        this.siblings = siblings;
+    }
+
+    /**
+     * Returns the position of the proven transfer in its batch.
+     *
+     * @return the transfer index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the paying account of the proven transfer.
+     *
+     * @return the payer's account number
+     */
+    public int getFrom() {
+        return from;
+    }
+
+    /**
+     * Returns the receiving account of the proven transfer.
+     *
+     * @return the payee's account number
+     */
+    public int getTo() {
+        return to;
+    }
+
+    /**
+     * Returns the amount of the proven transfer.
+     *
+     * @return the amount moved
+     */
+    public int getAmount() {
+        return amount;
+    }
+
+    /**
+     * Returns the number of sibling hashes in the proof.
+     *
+     * @return the proof length
+     */
+    public int length() {
+        return siblings.length;
+    }
+
+    /**
+     * Returns true if hashing the transfer up its path yields the given root.
+     *
+     * @param root the Merkle root committed to by a block header
+     * @return true if the transfer is in the batch with that root
+     */
+    public boolean verify(Hash root) {
+        if (root == null || index < 0 || index >= leafCount) {
+            return false;
+        }
+        MessageDigest md = newDigest();
+        byte[] hash = new byte[HASH_SIZE];
+        leaf(md, from, to, amount, hash, 0);
+        int k = 0;
+        for (int i = index, count = leafCount; count > 1; i >>>= 1, count = (count + 1) >>> 1) {
+            if ((i ^ 1) >= count) {
+                continue; // Promoted without a sibling.
+            }
+            if (k == siblings.length) {
+                return false;
+            }
+            byte[] sibling = siblings[k++].getData();
+            if ((i & 1) == 0) {
+                node(md, hash, 0, sibling, 0, hash, 0);
+            } else {
+                node(md, sibling, 0, hash, 0, hash, 0);
+            }
+        }
+        return k == siblings.length && root.equals(new Hash(hash));
+    }
+
+    /**
+     * Writes the leaf hash of a transfer into out at offset.
+     */
+    static void leaf(MessageDigest md, int from, int to, int amount, byte[] out, int offset) {
+        md.update(LEAF);
+        updateInt(md, from);
+        updateInt(md, to);
+        updateInt(md, amount);
+        finish(md, out, offset);
+    }
+
+    /**
+     * Writes the hash of the inner node with the given children into out at offset,
+     * which may overlap either child.
+     */
+    static void node(MessageDigest md, byte[] left, int leftOffset, byte[] right, int rightOffset,
+            byte[] out, int offset) {
+        md.update(NODE);
+        md.update(left, leftOffset, HASH_SIZE);
+        md.update(right, rightOffset, HASH_SIZE);
+        finish(md, out, offset);
+    }
+
+    /**
+     * Returns a new SHA-256 digest.
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("sha-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not found", e);
+        }
+    }
+
+    private static void updateInt(MessageDigest md, int value) {
+        md.update((byte) (value >>> 24));
+        md.update((byte) (value >>> 16));
+        md.update((byte) (value >>> 8));
+        md.update((byte) value);
+    }
+
+    private static void finish(MessageDigest md, byte[] out, int offset) {
+        try {
+            md.digest(out, offset, HASH_SIZE);
+        } catch (DigestException e) {
+            throw new IllegalStateException("SHA-256 digest does not fit", e);
+        }
+    }
+}
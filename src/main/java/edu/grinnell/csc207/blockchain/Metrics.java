@@ -0,0 +1,307 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide counters and latency histograms for mining, appending, validation and
+ * mempool transactions.
+ *
+ * Metrics are recorded only if the JVM was started with -Dblockchain.metrics=true.
+ * The switch is a static final constant, so when it is off the JIT removes the
+ * recording calls entirely; miners record their hash counts once per block or per
+ * chunk rather than per nonce either way. Counters are LongAdders, which spread
+ * contended increments over cells instead of contending on one word.
+ *
+ * The figures can be read through JMX once register() has been called, or printed
+ * periodically with startReporting.
+ */
+public final class Metrics implements MetricsMXBean {
+    /**
+     * True if metrics are recorded in this JVM.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("blockchain.metrics");
+
+    /**
+     * The JMX name under which register() publishes the metrics.
+     */
+    public static final String OBJECT_NAME = "edu.grinnell.csc207.blockchain:type=Metrics";
+
+    /**
+     * Why a block was refused by a chain.
+     */
+    public enum Rejection {
+        /** The block number does not follow the chain's tip. */
+        BLOCK_NUMBER,
+        /** The previous hash is not the tip's hash. */
+        PREVIOUS_HASH,
+        /** The hash does not meet the required difficulty. */
+        DIFFICULTY,
+        /** A transfer overdraws an account. */
+        FUNDS,
+        /** The block could not be written to the chain's store. */
+        STORAGE
+    }
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    private static final LongAdder HASHES = new LongAdder();
+    private static final LongAdder MINED = new LongAdder();
+    private static final LongAdder APPENDED = new LongAdder();
+    private static final LongAdder[] REJECTED = new LongAdder[Rejection.values().length];
+    private static final LatencyHistogram MINING = new LatencyHistogram();
+    private static final LatencyHistogram APPEND = new LatencyHistogram();
+    private static final LatencyHistogram VALIDATION = new LatencyHistogram();
+    private static final LongAdder CONFIRMED = new LongAdder();
+    private static final LongAdder REFUSED = new LongAdder();
+    private static final LatencyHistogram QUEUE = new LatencyHistogram();
+    private static final LatencyHistogram CONFIRMATION = new LatencyHistogram();
+    private static ScheduledExecutorService reporter;
+
+    static {
+        for (int i = 0; i < REJECTED.length; i++) {
+            REJECTED[i] = new LongAdder();
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the metrics as an MXBean.
+     *
+     * @return the process-wide metrics
+     */
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Publishes the metrics in the platform MBean server under OBJECT_NAME, unless
+     * they are already published.
+     *
+     * @return the name the metrics are published under
+     * @throws JMException if the MBean cannot be registered
+     */
+    public static synchronized ObjectName register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+            server.registerMBean(INSTANCE, name);
+        }
+        return name;
+    }
+
+    /**
+     * Prints report() to the stream at a fixed rate on a daemon thread until the
+     * returned future is cancelled.
+     *
+     * @param period the time between reports
+     * @param out    the stream to print to
+     * @return the future to cancel to stop reporting
+     */
+    public static synchronized ScheduledFuture<?> startReporting(Duration period, PrintStream out) {
+        if (reporter == null) {
+            reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-reporter");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        long nanos = period.toNanos();
+        return reporter.scheduleAtFixedRate(() -> out.println(report()), nanos, nanos,
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns all metrics on a few lines of text.
+     *
+     * @return the current metrics
+     */
+    public static String report() {
+        return "hashes=" + HASHES.sum() + " mined=" + MINED.sum() + " appended=" + APPENDED.sum()
+                + " rejected=" + INSTANCE.getRejections()
+                + "\n  mining:     " + MINING.snapshot()
+                + "\n  append:     " + APPEND.snapshot()
+                + "\n  validation: " + VALIDATION.snapshot()
+                + "\n  transactions confirmed=" + CONFIRMED.sum() + " refused=" + REFUSED.sum()
+                + "\n  queue:      " + QUEUE.snapshot()
+                + "\n  confirm:    " + CONFIRMATION.snapshot();
+    }
+
+    /**
+     * Returns the current time for timing an operation, or 0 if metrics are disabled.
+     *
+     * @return the start time in nanoseconds
+     */
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Counts nonces hashed by a miner.
+     *
+     * @param count the number of nonces tried
+     */
+    static void hashed(long count) {
+        if (ENABLED) {
+            HASHES.add(count);
+        }
+    }
+
+    /**
+     * Records a mined block and how long mining it took.
+     *
+     * @param nanos the mining time in nanoseconds
+     */
+    static void mined(long nanos) {
+        if (ENABLED) {
+            MINED.increment();
+            MINING.record(nanos);
+        }
+    }
+
+    /**
+     * Records blocks appended to a chain in one operation started at start.
+     *
+     * @param count the number of blocks appended
+     * @param start the time returned by start()
+     */
+    static void appended(int count, long start) {
+        if (ENABLED) {
+            APPENDED.add(count);
+            APPEND.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a refused append started at start.
+     *
+     * @param reason why the block was refused
+     * @param start  the time returned by start()
+     */
+    static void rejected(Rejection reason, long start) {
+        if (ENABLED) {
+            REJECTED[reason.ordinal()].increment();
+            APPEND.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a whole-chain validation started at start.
+     *
+     * @param start the time returned by start()
+     */
+    static void validated(long start) {
+        if (ENABLED) {
+            VALIDATION.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Counts a transaction refused by a mempool.
+     */
+    static void transactionRejected() {
+        if (ENABLED) {
+            REFUSED.increment();
+        }
+    }
+
+    /**
+     * Records how long a transaction waited in a mempool before being put into a block.
+     *
+     * @param submitted the time returned by start() when it was submitted
+     */
+    static void queued(long submitted) {
+        if (ENABLED) {
+            QUEUE.record(System.nanoTime() - submitted);
+        }
+    }
+
+    /**
+     * Records a transaction confirmed in an appended block.
+     *
+     * @param submitted the time returned by start() when it was submitted
+     */
+    static void confirmed(long submitted) {
+        if (ENABLED) {
+            CONFIRMED.increment();
+            CONFIRMATION.record(System.nanoTime() - submitted);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @Override
+    public long getHashes() {
+        return HASHES.sum();
+    }
+
+    @Override
+    public long getBlocksMined() {
+        return MINED.sum();
+    }
+
+    @Override
+    public long getBlocksAppended() {
+        return APPENDED.sum();
+    }
+
+    @Override
+    public Map<String, Long> getRejections() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Rejection reason : Rejection.values()) {
+            counts.put(reason.name(), REJECTED[reason.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public LatencySnapshot getMiningLatency() {
+        return MINING.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getAppendLatency() {
+        return APPEND.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getValidationLatency() {
+        return VALIDATION.snapshot();
+    }
+
+    @Override
+    public long getTransactionsConfirmed() {
+        return CONFIRMED.sum();
+    }
+
+    @Override
+    public long getTransactionsRejected() {
+        return REFUSED.sum();
+    }
+
+    @Override
+    public LatencySnapshot getQueueLatency() {
+        return QUEUE.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getConfirmationLatency() {
+        return CONFIRMATION.snapshot();
+    }
+}
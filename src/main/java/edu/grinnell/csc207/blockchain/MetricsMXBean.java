@@ -0,0 +1,92 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.Map;
+
+/**
+ * The management interface through which Metrics are exposed over JMX.
+ */
+public interface MetricsMXBean {
+    /**
+     * Returns true if metrics are being recorded.
+     *
+     * @return true if metrics are enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Returns the number of nonces hashed by miners.
+     *
+     * @return the hash count
+     */
+    long getHashes();
+
+    /**
+     * Returns the number of blocks mined.
+     *
+     * @return the mined block count
+     */
+    long getBlocksMined();
+
+    /**
+     * Returns the number of blocks appended to chains.
+     *
+     * @return the appended block count
+     */
+    long getBlocksAppended();
+
+    /**
+     * Returns the number of rejected blocks by reason.
+     *
+     * @return rejection counts keyed by reason name
+     */
+    Map<String, Long> getRejections();
+
+    /**
+     * Returns how long mining a block took.
+     *
+     * @return the mining latencies
+     */
+    LatencySnapshot getMiningLatency();
+
+    /**
+     * Returns how long appending a block or batch took, rejected ones included.
+     *
+     * @return the append latencies
+     */
+    LatencySnapshot getAppendLatency();
+
+    /**
+     * Returns how long validating a whole chain took.
+     *
+     * @return the validation latencies
+     */
+    LatencySnapshot getValidationLatency();
+
+    /**
+     * Returns the number of mempool transactions confirmed in appended blocks.
+     *
+     * @return the confirmed transaction count
+     */
+    long getTransactionsConfirmed();
+
+    /**
+     * Returns the number of transactions mempools refused on submission.
+     *
+     * @return the refused transaction count
+     */
+    long getTransactionsRejected();
+
+    /**
+     * Returns how long transactions waited in a mempool before going into a block.
+     *
+     * @return the queue latencies
+     */
+    LatencySnapshot getQueueLatency();
+
+    /**
+     * Returns how long transactions took from submission to confirmation.
+     *
+     * @return the confirmation latencies
+     */
+    LatencySnapshot getConfirmationLatency();
+}
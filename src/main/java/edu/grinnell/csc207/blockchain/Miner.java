@@ -0,0 +1,18 @@
+package edu.grinnell.csc207.blockchain;
+
+/**
+ * A strategy for searching the nonce space of a block.
+ */
+public interface Miner {
+
+    /**
+     * Returns the lowest nonce for which the given block hashes to a Hash meeting its
+     * difficulty. Only the header fields that are hashed are consulted: the number,
+     * amount, previous hash, difficulty and, for a transfer block, the Merkle root of
+     * its transfers.
+     *
+     * @param blk the block being mined
+     * @return the lowest valid nonce
+     */
+    long findNonce(Block blk);
+}
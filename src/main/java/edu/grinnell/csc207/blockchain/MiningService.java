@@ -0,0 +1,151 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mines blocks asynchronously for many concurrent requests.
+ *
+ * Each request is handled on its own virtual thread (on JVMs that have them,
+ * otherwise on a cached daemon thread), which hands the CPU-bound nonce search to
+ * a fixed pool of platform threads and waits for it up to the request's deadline.
+ * The search checks a stop flag every few thousand nonces, so a request that times
+ * out or whose future is cancelled frees its hashing thread promptly. At most
+ * capacity requests are admitted at a time; beyond that new requests fail at once
+ * with a RejectedExecutionException.
+ */
+public class MiningService implements AutoCloseable {
+    private final ExecutorService requests;
+    private final ExecutorService hashing;
+    private final Semaphore permits;
+
+    /**
+     * Constructs a mining service.
+     *
+     * @param hashingThreads the number of platform threads searching for nonces
+     * @param capacity       the most requests admitted at a time, queued or running
+     */
+    public MiningService(int hashingThreads, int capacity) {
+        if (hashingThreads < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Thread count and capacity must be positive.");
+        }
+        this.requests = newRequestExecutor();
+        this.hashing = Executors.newFixedThreadPool(hashingThreads, daemonThreads("hashing"));
+        this.permits = new Semaphore(capacity);
+    }
+
+    /**
+     * Mines the next block of the chain for the given amount. The chain's tip,
+     * size and next difficulty are read on the calling thread.
+     *
+     * @param chain   the chain the block will extend
+     * @param amount  the transaction amount
+     * @param timeout how long mining may take
+     * @return a future completed with the mined block, or exceptionally with a
+     *         TimeoutException, CancellationException or RejectedExecutionException
+     */
+    public CompletableFuture<Block> mine(BlockChain chain, int amount, Duration timeout) {
+        return mine(chain.getSize(), amount, chain.getHash(), chain.nextDifficulty(), timeout);
+    }
+
+    /**
+     * Mines a block with the given header fields. Cancelling the returned future
+     * stops the nonce search.
+     *
+     * @param num        the block number
+     * @param amount     the transaction amount
+     * @param prevHash   the previous block's hash
+     * @param difficulty the number of leading zero bits the hash must have
+     * @param timeout    how long mining may take
+     * @return a future completed with the mined block, or exceptionally with a
+     *         TimeoutException, CancellationException or RejectedExecutionException
+     */
+    public CompletableFuture<Block> mine(int num, int amount, Hash prevHash, int difficulty,
+            Duration timeout) {
+        if (!permits.tryAcquire()) {
+            return CompletableFuture.failedFuture(
+                    new RejectedExecutionException("Mining queue is full"));
+        }
+        CompletableFuture<Block> result = new CompletableFuture<>();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        AtomicBoolean stop = new AtomicBoolean();
+        // However the future ends, including cancellation by the caller, stop hashing and
+        // free the request's place in the queue.
+        result.whenComplete((blk, e) -> {
+            stop.set(true);
+            permits.release();
+        });
+        try {
+            requests.execute(() -> handle(result, stop, deadline,
+                    () -> new Block(num, amount, prevHash, difficulty,
+                            new SequentialMiner(stop::get))));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Stops accepting requests and interrupts any running ones.
+     */
+    @Override
+    public void close() {
+        requests.shutdownNow();
+        hashing.shutdownNow();
+    }
+
+    // Runs one request on its request thread: hash on the platform pool, wait until
+    // the deadline, and complete the result.
+    private void handle(CompletableFuture<Block> result, AtomicBoolean stop, long deadline,
+            Callable<Block> work) {
+        try {
+            Future<Block> search = hashing.submit(work);
+            try {
+                result.complete(search.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                stop.set(true);
+                result.completeExceptionally(new TimeoutException("Mining deadline passed"));
+            } catch (ExecutionException e) {
+                result.completeExceptionally(e.getCause());
+            } catch (CancellationException e) {
+                result.completeExceptionally(e);
+            }
+        } catch (InterruptedException e) {
+            stop.set(true);
+            result.completeExceptionally(new CancellationException("Mining service closed"));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    // Virtual threads need Java 21, so look the factory up at run time.
+    private static ExecutorService newRequestExecutor() {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(daemonThreads("mining-request"));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,113 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A miner that splits the nonce space across a fixed number of worker threads.
+ *
+ * Workers claim consecutive chunks of nonces in increasing order and stop as soon
+ * as every nonce below the best one found so far has been tried, so the result is
+ * always the lowest valid nonce, exactly as with a SequentialMiner.
+ */
+public class ParallelMiner implements Miner, AutoCloseable {
+    private static final int CHUNK_SIZE = 1 << 12;
+
+    private final int threads;
+    private final ExecutorService pool;
+
+    /**
+     * Constructs a miner backed by the given number of worker threads.
+     *
+     * @param threads the number of worker threads, at least 1
+     */
+    public ParallelMiner(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive.");
+        }
+        this.threads = threads;
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "miner");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Returns the number of worker threads used by this miner.
+     *
+     * @return the thread count
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Returns the lowest nonce for which the given block hashes to a valid Hash.
+     *
+     * @param blk the block being mined
+     * @return the lowest valid nonce
+     */
+    @Override
+    public long findNonce(Block blk) {
+        AtomicLong nextChunk = new AtomicLong();
+        AtomicLong best = new AtomicLong(Long.MAX_VALUE);
+        List<Future<?>> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            workers.add(pool.submit(() -> search(blk, nextChunk, best)));
+        }
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            // Every candidate is above Long.MIN_VALUE, so this stops all workers.
+            best.set(Long.MIN_VALUE);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Mining was interrupted", e);
+        } catch (ExecutionException e) {
+            best.set(Long.MIN_VALUE);
+            throw new IllegalStateException("Mining failed", e.getCause());
+        }
+        return best.get();
+    }
+
+    /**
+     * Shuts down the worker threads of this miner.
+     */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    // Claims chunks of nonces until one past the best nonce found so far.
+    private static void search(Block blk, AtomicLong nextChunk, AtomicLong best) {
+        BlockHasher hasher = blk.newHasher();
+        long tried = 0;
+        try {
+            while (true) {
+                long start = nextChunk.getAndAdd(CHUNK_SIZE);
+                if (start > best.get()) {
+                    return;
+                }
+                for (long candidate = start; candidate < start + CHUNK_SIZE; candidate++) {
+                    if (candidate > best.get()) {
+                        return;
+                    }
+                    tried++;
+                    if (hasher.isValidNonce(candidate)) {
+                        best.accumulateAndGet(candidate, Math::min);
+                        return;
+                    }
+                }
+            }
+        } finally {
+            Metrics.hashed(tried);
+        }
+    }
+}
@@ -0,0 +1,628 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A network node that keeps a BlockChain in step with its peers over TCP.
+ *
+ * The node listens on a loopback port and runs one non-blocking event loop thread,
+ * which owns the chain: public methods hand their work to the loop, and the chain
+ * must not be used elsewhere until the node is closed. Blocks appended locally, or
+ * received and accepted, are announced to every other peer. A node that learns a
+ * peer is ahead catches up by requesting ranges of up to BATCH_SIZE blocks, keeping
+ * up to WINDOW requests in flight so the transfer is not held up by round trips.
+ * Every received block goes through BlockChain.appendAll, so peers sending invalid
+ * blocks are disconnected and nothing is appended. Peers on a competing branch are
+ * disconnected too, since the chain has no fork choice.
+ *
+ * Messages are frames of a 4-byte length, a 1-byte type and a payload. Blocks are
+ * sent as ChainCodec stores them, without their number, previous hash or own hash,
+ * which the receiver recomputes:
+ * HELLO (genesis hash, height), GET_BLOCKS (first number, count),
+ * BLOCKS (first number, count, then the previous hash and the blocks if count > 0)
+ * and BLOCK (number, previous hash, block) for announcements.
+ */
+public class PeerNode implements AutoCloseable {
+    /** The most blocks requested or sent in one BLOCKS message. */
+    public static final int BATCH_SIZE = 512;
+    /** The most block range requests in flight to one peer. */
+    public static final int WINDOW = 8;
+
+    private static final byte HELLO = 1;
+    private static final byte GET_BLOCKS = 2;
+    private static final byte BLOCKS = 3;
+    private static final byte BLOCK = 4;
+    private static final int HASH_BYTES = 32;
+    private static final int MAX_FRAME = 1 << 24;
+
+    private final BlockChain chain;
+    private final Hash genesis;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Thread loop;
+    // Work handed to the event loop by other threads.
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // Connected peers; only used on the event loop.
+    private final List<Peer> peers = new ArrayList<>();
+    // The peer being caught up from, and the end of the range requested from it so far.
+    private Peer syncPeer;
+    private int requestedUpTo;
+    private volatile boolean closed;
+    private volatile int height;
+    private volatile Hash tip;
+    private volatile int peerCount;
+
+    /**
+     * Constructs a node for the given chain, listening on an ephemeral loopback port.
+     *
+     * @param chain the chain to keep in step with peers, owned by the node until closed
+     * @throws IOException if the node cannot listen
+     */
+    public PeerNode(BlockChain chain) throws IOException {
+        this(chain, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    /**
+     * Constructs a node for the given chain, listening on the given address.
+     *
+     * @param chain   the chain to keep in step with peers, owned by the node until closed
+     * @param address the address to listen on
+     * @throws IOException if the node cannot listen
+     */
+    public PeerNode(BlockChain chain, InetSocketAddress address) throws IOException {
+        this.chain = chain;
+        this.genesis = chain.getBlock(0).getHash();
+        this.height = chain.getSize();
+        this.tip = chain.getHash();
+        this.selector = Selector.open();
+        try {
+            this.server = ServerSocketChannel.open();
+            server.bind(address);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            selector.close();
+            throw e;
+        }
+        this.loop = new Thread(this::run, "peer-" + getAddress().getPort());
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    /**
+     * Returns the address peers can connect to.
+     *
+     * @return the listening address
+     */
+    public InetSocketAddress getAddress() {
+        try {
+            return (InetSocketAddress) server.getLocalAddress();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Connects to another node. The nodes exchange heights once connected, and the
+     * one behind starts catching up.
+     *
+     * @param address the other node's address
+     * @return a future completed once connected, or exceptionally with an IOException
+     */
+    public CompletableFuture<Void> connect(InetSocketAddress address) {
+        CompletableFuture<Void> connected = new CompletableFuture<>();
+        submit(connected, () -> {
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.configureBlocking(false);
+                Peer peer = new Peer(channel, connected);
+                if (channel.connect(address)) {
+                    peer.key = channel.register(selector, SelectionKey.OP_READ, peer);
+                    connected(peer);
+                } else {
+                    peer.key = channel.register(selector, SelectionKey.OP_CONNECT, peer);
+                }
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        });
+        return connected;
+    }
+
+    /**
+     * Appends a block to the chain, checked as BlockChain.appendAll does, and
+     * announces it to every peer.
+     *
+     * @param blk the block to append
+     * @return a future completed once the block is appended, or exceptionally with
+     *         the IllegalArgumentException explaining why it was refused
+     */
+    public CompletableFuture<Void> append(Block blk) {
+        CompletableFuture<Void> appended = new CompletableFuture<>();
+        submit(appended, () -> {
+            chain.appendAll(Collections.singletonList(blk));
+            published();
+            announce(blk, null);
+            appended.complete(null);
+        });
+        return appended;
+    }
+
+    /**
+     * Returns the number of blocks in the chain.
+     *
+     * @return the chain's size, as of the last block appended
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the hash of the last block in the chain.
+     *
+     * @return the tip's hash, as of the last block appended
+     */
+    public Hash getHash() {
+        return tip;
+    }
+
+    /**
+     * Returns the number of connected peers.
+     *
+     * @return the peer count
+     */
+    public int getPeerCount() {
+        return peerCount;
+    }
+
+    /**
+     * Waits until the chain holds at least the given number of blocks.
+     *
+     * @param target  the height to wait for
+     * @param timeout how long to wait
+     * @return true if the height was reached, false on timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitHeight(int target, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (this) {
+            while (height < target) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return false;
+                }
+                wait(left / 1_000_000, (int) (left % 1_000_000));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Disconnects every peer, stops listening and waits for the event loop to end.
+     * The chain may be used directly afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        boolean interrupted = false;
+        while (loop.isAlive()) {
+            try {
+                loop.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Work that may fail with an I/O error or a refused block.
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    // Runs a task on the event loop, failing the future if the task throws.
+    private void submit(CompletableFuture<?> result, Task task) {
+        if (closed) {
+            result.completeExceptionally(new IllegalStateException("Node is closed."));
+            return;
+        }
+        tasks.add(() -> {
+            try {
+                task.run();
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        selector.wakeup();
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                runTasks();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        handle((Peer) key.attachment(), key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // The selector or listening socket failed, so the node cannot go on.
+        } finally {
+            closed = true;
+            runTasks();
+            for (SelectionKey key : new ArrayList<>(selector.keys())) {
+                if (key.attachment() instanceof Peer) {
+                    drop((Peer) key.attachment());
+                }
+            }
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException e) {
+                // Nothing is left to release.
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        Peer peer = new Peer(channel, null);
+        peer.key = channel.register(selector, SelectionKey.OP_READ, peer);
+        connected(peer);
+    }
+
+    // Handles a ready peer, dropping it if its connection fails or it misbehaves.
+    private void handle(Peer peer, SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                peer.channel.finishConnect();
+                key.interestOps(SelectionKey.OP_READ);
+                connected(peer);
+            }
+            if (key.isValid() && key.isReadable()) {
+                read(peer);
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush(peer);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (peer.connected != null) {
+                peer.connected.completeExceptionally(e);
+            }
+            drop(peer);
+        }
+    }
+
+    private void connected(Peer peer) throws IOException {
+        peers.add(peer);
+        peerCount = peers.size();
+        send(peer, frame(HELLO, data -> {
+            writeHash(data, genesis);
+            data.writeInt(chain.getSize());
+        }));
+        if (peer.connected != null) {
+            peer.connected.complete(null);
+        }
+    }
+
+    private void drop(Peer peer) {
+        try {
+            peer.channel.close();
+        } catch (IOException e) {
+            // The connection is gone either way.
+        }
+        if (peers.remove(peer)) {
+            peerCount = peers.size();
+        }
+        if (peer == syncPeer) {
+            syncPeer = null;
+            if (!closed) {
+                sync();
+            }
+        }
+    }
+
+    // Reads what has arrived and handles every complete frame.
+    private void read(Peer peer) throws IOException {
+        if (peer.channel.read(peer.in) < 0) {
+            throw new EOFException("Peer closed the connection.");
+        }
+        ByteBuffer in = peer.in;
+        in.flip();
+        int needed = 0;
+        while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length < 1 || length > MAX_FRAME) {
+                throw new ProtocolException("Frame length " + length + " is out of range.");
+            }
+            if (in.remaining() < 4 + length) {
+                needed = 4 + length;
+                break;
+            }
+            int start = in.position() + 4;
+            in.position(start + length);
+            receive(peer, new DataInputStream(
+                    new ByteArrayInputStream(in.array(), start, length)));
+        }
+        in.compact();
+        if (needed > in.capacity()) {
+            in.flip();
+            peer.in = ByteBuffer.allocate(Math.max(needed, in.capacity() * 2)).put(in);
+        }
+    }
+
+    private void receive(Peer peer, DataInputStream data) throws IOException {
+        byte type = data.readByte();
+        if (!peer.greeted && type != HELLO) {
+            throw new ProtocolException("Peer did not say hello first.");
+        }
+        switch (type) {
+            case HELLO:
+                if (!readHash(data).equals(genesis)) {
+                    throw new ProtocolException("Peer has a different genesis block.");
+                }
+                peer.greeted = true;
+                peer.height = data.readInt();
+                sync();
+                break;
+            case GET_BLOCKS:
+                serve(peer, data.readInt(), data.readInt());
+                break;
+            case BLOCKS:
+                received(peer, data);
+                break;
+            case BLOCK:
+                announced(peer, data);
+                break;
+            default:
+                throw new ProtocolException("Unknown message type " + type + ".");
+        }
+    }
+
+    // Sends the requested blocks that this node has, at most BATCH_SIZE of them.
+    private void serve(Peer peer, int from, int count) throws IOException {
+        int available = from < 1 ? 0 : chain.getSize() - from;
+        int n = Math.max(0, Math.min(Math.min(count, BATCH_SIZE), available));
+        send(peer, frame(BLOCKS, data -> {
+            data.writeInt(from);
+            data.writeInt(n);
+            if (n > 0) {
+                writeHash(data, chain.getBlock(from - 1).getHash());
+                for (int i = 0; i < n; i++) {
+                    ChainCodec.writeBlock(data, chain.getBlock(from + i));
+                }
+            }
+        }));
+    }
+
+    // Appends a range sent by the sync peer and asks for more.
+    private void received(Peer peer, DataInput data) throws IOException {
+        int from = data.readInt();
+        int count = data.readInt();
+        if (count < 0 || count > BATCH_SIZE) {
+            throw new ProtocolException("Block count " + count + " is out of range.");
+        }
+        if (peer != syncPeer) {
+            return;
+        }
+        peer.inFlight--;
+        if (count == 0) {
+            // The peer is not as far ahead as it said.
+            peer.height = Math.min(peer.height, from);
+        } else if (from == chain.getSize()) {
+            List<Block> batch = new ArrayList<>(count);
+            Hash prevHash = readHash(data);
+            for (int i = 0; i < count; i++) {
+                Block blk = ChainCodec.readBlock(data, from + i, prevHash);
+                batch.add(blk);
+                prevHash = blk.getHash();
+            }
+            chain.appendAll(batch);
+            published();
+            announce(batch.get(count - 1), peer);
+        }
+        // Ranges after a short or skipped one no longer fit and are requested again.
+        sync();
+    }
+
+    // Appends an announced block if it extends the tip, or catches up if it is ahead.
+    private void announced(Peer peer, DataInput data) throws IOException {
+        int num = data.readInt();
+        Hash prevHash = readHash(data);
+        Block blk = ChainCodec.readBlock(data, num, prevHash);
+        peer.height = Math.max(peer.height, num + 1);
+        if (num == chain.getSize() && syncPeer == null) {
+            if (prevHash.equals(chain.getHash())) {
+                chain.appendAll(Collections.singletonList(blk));
+                published();
+                announce(blk, peer);
+            }
+        } else if (num > chain.getSize()) {
+            sync();
+        }
+    }
+
+    // Picks the peer furthest ahead and keeps up to WINDOW range requests in flight to it.
+    private void sync() {
+        int size = chain.getSize();
+        if (syncPeer != null && syncPeer.inFlight == 0) {
+            syncPeer = null;
+        }
+        if (syncPeer == null) {
+            for (Peer peer : peers) {
+                if (peer.height > size && (syncPeer == null || peer.height > syncPeer.height)) {
+                    syncPeer = peer;
+                }
+            }
+            if (syncPeer == null) {
+                return;
+            }
+            requestedUpTo = size;
+        }
+        Peer peer = syncPeer;
+        while (peer.inFlight < WINDOW && requestedUpTo < peer.height) {
+            int from = requestedUpTo;
+            int count = Math.min(BATCH_SIZE, peer.height - from);
+            peer.inFlight++;
+            requestedUpTo += count;
+            try {
+                send(peer, frame(GET_BLOCKS, data -> {
+                    data.writeInt(from);
+                    data.writeInt(count);
+                }));
+            } catch (IOException e) {
+                drop(peer);
+                return;
+            }
+        }
+    }
+
+    // Announces a block to every peer but the one it came from.
+    private void announce(Block blk, Peer source) {
+        ByteBuffer message = frame(BLOCK, data -> {
+            data.writeInt(blk.getNum());
+            writeHash(data, blk.getPrevHash());
+            ChainCodec.writeBlock(data, blk);
+        });
+        for (Peer peer : new ArrayList<>(peers)) {
+            if (peer != source) {
+                try {
+                    send(peer, message.duplicate());
+                } catch (IOException e) {
+                    drop(peer);
+                }
+            }
+        }
+    }
+
+    // Publishes the chain's new height and tip to other threads.
+    private void published() {
+        tip = chain.getHash();
+        synchronized (this) {
+            height = chain.getSize();
+            notifyAll();
+        }
+    }
+
+    private void send(Peer peer, ByteBuffer frame) throws IOException {
+        peer.out.add(frame);
+        if (peer.out.size() == 1) {
+            flush(peer);
+        }
+    }
+
+    // Writes queued frames until the socket would block, then waits for it to drain.
+    private void flush(Peer peer) throws IOException {
+        while (!peer.out.isEmpty()) {
+            ByteBuffer head = peer.out.peek();
+            peer.channel.write(head);
+            if (head.hasRemaining()) {
+                break;
+            }
+            peer.out.poll();
+        }
+        if (peer.key != null && peer.key.isValid()
+                && (peer.key.interestOps() & SelectionKey.OP_CONNECT) == 0) {
+            peer.key.interestOps(peer.out.isEmpty() ? SelectionKey.OP_READ
+                    : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    // Writes a message body.
+    private interface Payload {
+        void writeTo(DataOutput data) throws IOException;
+    }
+
+    private static ByteBuffer frame(byte type, Payload payload) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        try {
+            data.writeInt(0);
+            data.writeByte(type);
+            payload.writeTo(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.remaining() - 4);
+        return frame;
+    }
+
+    private static void writeHash(DataOutput data, Hash hash) throws IOException {
+        data.write(hash.getData());
+    }
+
+    private static Hash readHash(DataInput data) throws IOException {
+        byte[] bytes = new byte[HASH_BYTES];
+        data.readFully(bytes);
+        return new Hash(bytes);
+    }
+
+    // One connection and what this node knows about the peer at the other end.
+    private static final class Peer {
+        final SocketChannel channel;
+        // Completed once an outgoing connection is made; null for accepted ones.
+        final CompletableFuture<Void> connected;
+        final Queue<ByteBuffer> out = new ArrayDeque<>();
+        ByteBuffer in = ByteBuffer.allocate(1 << 16);
+        SelectionKey key;
+        boolean greeted;
+        int height;
+        int inFlight;
+
+        Peer(SocketChannel channel, CompletableFuture<Void> connected) {
+            this.channel = channel;
+            this.connected = connected;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package edu.grinnell.csc207.blockchain;
+
+/**
+ * A policy that adjusts mining difficulty every few blocks toward a target mining time.
+ *
+ * Every interval blocks, the average measured mining time of the last interval blocks
+ * is compared with the target. Each extra bit of difficulty doubles the expected work,
+ * so the difficulty moves by the base-2 logarithm of target / average, rounded and
+ * limited to MAX_STEP bits per adjustment and to the policy's bounds.
+ */
+public class Retargeting {
+    /**
+     * The largest change in difficulty made by a single adjustment.
+     */
+    public static final int MAX_STEP = 4;
+
+    private final int interval;
+    private final long targetNanos;
+    private final int minDifficulty;
+    private final int maxDifficulty;
+
+    /**
+     * Constructs a retargeting policy.
+     *
+     * @param interval      the number of blocks between adjustments
+     * @param targetNanos   the desired mining time per block in nanoseconds
+     * @param minDifficulty the lowest difficulty the policy may choose
+     * @param maxDifficulty the highest difficulty the policy may choose
+     */
+    public Retargeting(int interval, long targetNanos, int minDifficulty, int maxDifficulty) {
+        if (interval < 1 || targetNanos < 1) {
+            throw new IllegalArgumentException("Interval and target time must be positive.");
+        }
+        if (minDifficulty < 0 || minDifficulty > maxDifficulty
+                || maxDifficulty > Hash.MAX_DIFFICULTY) {
+            throw new IllegalArgumentException("Invalid difficulty bounds.");
+        }
+        this.interval = interval;
+        this.targetNanos = targetNanos;
+        this.minDifficulty = minDifficulty;
+        this.maxDifficulty = maxDifficulty;
+    }
+
+    /**
+     * Returns the lowest difficulty the policy may choose.
+     *
+     * @return the minimum difficulty
+     */
+    public int getMinDifficulty() {
+        return minDifficulty;
+    }
+
+    /**
+     * Returns the difficulty for the next block of the chain. Between adjustments,
+     * and when none of the last interval blocks were mined locally, this is the
+     * difficulty of the chain's last block, kept within the policy's bounds.
+     *
+     * @param chain the chain the next block extends
+     * @return the difficulty for the next block
+     */
+    public int nextDifficulty(BlockChain chain) {
+        int size = chain.getSize();
+        int current = chain.getBlock(size - 1).getDifficulty();
+        if (size % interval == 0 && size > interval) {
+            long total = 0;
+            int measured = 0;
+            for (int i = size - interval; i < size; i++) {
+                long nanos = chain.getBlock(i).getMiningNanos();
+                if (nanos > 0) {
+                    total += nanos;
+                    measured++;
+                }
+            }
+            if (measured > 0) {
+                double ratio = (double) targetNanos * measured / total;
+                long step = Math.round(Math.log(ratio) / Math.log(2));
+                current += (int) Math.max(-MAX_STEP, Math.min(MAX_STEP, step));
+            }
+        }
+        return Math.max(minDifficulty, Math.min(maxDifficulty, current));
+    }
+}
@@ -0,0 +1,199 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Runs driver commands from a script, one command and its arguments per line, and
+ * prints only their results.
+ *
+ * Commands: mine AMOUNT, append AMOUNT NONCE, mine-append AMOUNT [COUNT], remove,
+ * check, report, print, save FILE, load FILE and quit. Blank lines and lines starting
+ * with # are skipped. In compact mode every command prints one line of
+ * space-separated fields meant for other programs: ok, err, nonce, valid, invalid or
+ * balances, followed by its values.
+ */
+public class ScriptRunner {
+    private BlockChain chain;
+    private final Miner miner;
+    private final boolean compact;
+    private final boolean canLoad;
+    private final PrintWriter out;
+    private int errors;
+
+    /**
+     * Constructs a runner for the given chain.
+     *
+     * @param chain   the chain the commands work on
+     * @param miner   the strategy used to mine blocks
+     * @param compact true for machine-readable output
+     * @param canLoad false if load must be refused, e.g. because the chain is stored
+     * @param out     where results are printed; the caller flushes it
+     */
+    public ScriptRunner(BlockChain chain, Miner miner, boolean compact, boolean canLoad,
+            PrintWriter out) {
+        this.chain = chain;
+        this.miner = miner;
+        this.compact = compact;
+        this.canLoad = canLoad;
+        this.out = out;
+    }
+
+    /**
+     * Runs every command until the end of the script or a quit command.
+     *
+     * @param in the script to read
+     * @return the number of commands that failed
+     * @throws IOException if the script cannot be read
+     */
+    public int run(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (!execute(line.split("\\s+"))) {
+                break;
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Returns the chain the commands work on, which load may have replaced.
+     *
+     * @return the current chain
+     */
+    public BlockChain getChain() {
+        return chain;
+    }
+
+    // Runs one command and returns false if the script should stop.
+    private boolean execute(String[] words) {
+        String command = words[0].toLowerCase();
+        try {
+            switch (command) {
+                case "mine":
+                    mine(intArg(words, 1));
+                    break;
+                case "append":
+                    append(new Block(chain.getSize(), intArg(words, 1), chain.getHash(),
+                            chain.nextDifficulty(), Long.parseLong(arg(words, 2))));
+                    break;
+                case "mine-append":
+                    mineAppend(intArg(words, 1), words.length > 2 ? intArg(words, 2) : 1);
+                    break;
+                case "remove":
+                    if (chain.removeLast()) {
+                        ok(chain.getSize());
+                    } else {
+                        error("Cannot remove genesis block.");
+                    }
+                    break;
+                case "check":
+                    check();
+                    break;
+                case "report":
+                    int[] balances = chain.getBalances();
+                    out.println(compact ? "balances " + balances[0] + " " + balances[1]
+                            : "Alice: " + balances[0] + ", Bob: " + balances[1]);
+                    break;
+                case "print":
+                    out.println(chain);
+                    break;
+                case "save":
+                    save(arg(words, 1));
+                    break;
+                case "load":
+                    load(arg(words, 1));
+                    break;
+                case "quit":
+                    return false;
+                default:
+                    error("Invalid command: " + command);
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            error("Invalid number in: " + String.join(" ", words));
+        } catch (IllegalArgumentException | IOException | UncheckedIOException e) {
+            error(e.getMessage());
+        }
+        return true;
+    }
+
+    private void mine(int amount) {
+        Block blk = chain.mine(amount, miner);
+        out.println(compact ? "nonce " + blk.getNonce()
+                : "amount = " + amount + ", nonce = " + blk.getNonce());
+    }
+
+    private void append(Block blk) {
+        chain.append(blk);
+        ok(chain.getSize());
+    }
+
+    // Mines and appends count blocks of the same amount, stopping at the first failure.
+    private void mineAppend(int amount, int count) {
+        for (int i = 0; i < count; i++) {
+            chain.append(chain.mine(amount, miner));
+        }
+        ok(chain.getSize());
+    }
+
+    private void check() {
+        int first = chain.firstInvalidBlock();
+        if (compact) {
+            out.println(first < 0 ? "valid" : "invalid " + first);
+        } else {
+            out.println(first < 0 ? "Chain is valid!" : "Chain is invalid!");
+        }
+    }
+
+    private void save(String file) throws IOException {
+        try (OutputStream stream = Files.newOutputStream(Paths.get(file))) {
+            ChainCodec.write(chain, stream);
+        }
+        ok(chain.getSize());
+    }
+
+    private void load(String file) throws IOException {
+        if (!canLoad) {
+            throw new IllegalArgumentException("Cannot load over a stored chain.");
+        }
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(Paths.get(file)),
+                1 << 16)) {
+            chain = ChainCodec.read(stream);
+        }
+        ok(chain.getSize());
+    }
+
+    private void ok(int size) {
+        if (compact) {
+            out.println("ok " + size);
+        }
+    }
+
+    private void error(String message) {
+        errors++;
+        out.println(compact ? "err " + message : "Error: " + message);
+    }
+
+    private static String arg(String[] words, int i) {
+        if (i >= words.length) {
+            throw new IllegalArgumentException("Missing argument for " + words[0] + ".");
+        }
+        return words[i];
+    }
+
+    private static int intArg(String[] words, int i) {
+        return Integer.parseInt(arg(words, i));
+    }
+}
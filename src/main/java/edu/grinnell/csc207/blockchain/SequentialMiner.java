@@ -0,0 +1,52 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A miner that tries every nonce in order from 0 on the calling thread.
+ */
+public class SequentialMiner implements Miner {
+    // How many nonces are tried between checks of the stop condition.
+    private static final long CHECK_MASK = (1 << 12) - 1;
+
+    private final BooleanSupplier stop;
+
+    /**
+     * Constructs a miner that always searches until it finds a nonce.
+     */
+    public SequentialMiner() {
+        this(() -> false);
+    }
+
+    /**
+     * Constructs a miner that gives up with a CancellationException once the given
+     * condition becomes true. The condition is checked every few thousand nonces.
+     *
+     * @param stop the condition under which mining stops
+     */
+    public SequentialMiner(BooleanSupplier stop) {
+        this.stop = stop;
+    }
+
+    /**
+     * Returns the lowest nonce for which the given block hashes to a valid Hash.
+     *
+     * @param blk the block being mined
+     * @return the lowest valid nonce
+     */
+    @Override
+    public long findNonce(Block blk) {
+        BlockHasher hasher = blk.newHasher();
+        long candidate = 0;
+        while (!hasher.isValidNonce(candidate)) {
+            candidate++;
+            if ((candidate & CHECK_MASK) == 0 && stop.getAsBoolean()) {
+                Metrics.hashed(candidate);
+                throw new CancellationException("Mining was stopped");
+            }
+        }
+        Metrics.hashed(candidate + 1);
+        return candidate;
+    }
+}
@@ -0,0 +1,233 @@
+package edu.grinnell.csc207.blockchain;
+
+/**
+ * Hashes a block header with a SHA-256 written for the header's fixed layout: number,
+ * amount, optional 32-byte previous hash, difficulty, optional 32-byte body root and
+ * nonce, all big-endian.
+ *
+ * The padded message is built once as 32-bit words straight from the header fields.
+ * Every 64-byte block before the one holding the nonce is compressed once into a
+ * midstate, and so are the rounds of the last block that come before the nonce words,
+ * along with the message schedule words that do not depend on them. Trying a nonce
+ * only runs the remaining rounds and, for isValidNonce, stops at the first output
+ * word that settles whether the hash meets the difficulty. Results are the same as
+ * MessageDigest's, bit for bit.
+ */
+final class Sha256BlockHasher implements BlockHasher {
+    private static final int[] K = {
+        0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+        0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+        0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+        0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+        0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+        0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+        0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+        0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+    private static final int[] IV = {
+        0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+
+    private final int difficulty;
+    // Chaining value going into the last message block.
+    private final int[] chain = new int[8];
+    // Working variables after the last block's rounds before the nonce words.
+    private final int[] start = new int[8];
+    // The last block's message schedule, with every nonce-independent word filled in.
+    private final int[] w = new int[64];
+    // Index of the nonce's high word within the last block.
+    private final int nonceWord;
+    // First schedule word past 15 that depends on the nonce.
+    private final int firstVarying;
+    // Working variables after the last nonce's 64 rounds, before the feed-forward.
+    private final int[] state = new int[8];
+
+    /**
+     * Constructs a hasher for the block with the given header fields and body root,
+     * both of which must be 32-byte hashes if present.
+     *
+     * @param num        the block number
+     * @param amount     the dollar amount transferred
+     * @param prevHash   the previous block's hash (or null for start block)
+     * @param difficulty the number of leading zero bits a valid hash must have
+     * @param body       the Merkle root of the block's transfers (or null if it has none)
+     */
+    Sha256BlockHasher(int num, int amount, Hash prevHash, int difficulty, Hash body) {
+        this.difficulty = difficulty;
+        int words = 5 + (prevHash == null ? 0 : 8) + (body == null ? 0 : 8);
+        int blocks = (words * 4 + 9 + 63) / 64;
+        int[] message = new int[blocks * 16];
+        int n = 0;
+        message[n++] = num;
+        message[n++] = amount;
+        n = putHash(message, n, prevHash);
+        message[n++] = difficulty;
+        n = putHash(message, n, body);
+        int nonceIndex = n;
+        message[n + 2] = 0x80000000;
+        message[message.length - 1] = words * 32;
+
+        System.arraycopy(IV, 0, chain, 0, 8);
+        int last = (blocks - 1) * 16;
+        for (int off = 0; off < last; off += 16) {
+            compress(chain, message, off);
+        }
+        System.arraycopy(message, last, w, 0, 16);
+        nonceWord = nonceIndex - last;
+
+        // Schedule words from 16 on that reach back to neither nonce word stay fixed.
+        boolean[] varies = new boolean[64];
+        varies[nonceWord] = true;
+        varies[nonceWord + 1] = true;
+        int first = 64;
+        for (int t = 16; t < 64; t++) {
+            varies[t] = varies[t - 2] || varies[t - 7] || varies[t - 15] || varies[t - 16];
+            if (varies[t]) {
+                first = Math.min(first, t);
+            } else if (first == 64) {
+                w[t] = schedule(w, t);
+            }
+        }
+        firstVarying = first;
+
+        System.arraycopy(chain, 0, start, 0, 8);
+        for (int t = 0; t < nonceWord; t++) {
+            round(start, t, w[t]);
+        }
+    }
+
+    /**
+     * Returns a specialized hasher for the header, or a JcaBlockHasher if either hash
+     * is shorter than 32 bytes and so does not fit the fixed layout.
+     *
+     * @param num        the block number
+     * @param amount     the dollar amount transferred
+     * @param prevHash   the previous block's hash (or null for start block)
+     * @param difficulty the number of leading zero bits a valid hash must have
+     * @param body       the Merkle root of the block's transfers (or null if it has none)
+     * @return a hasher for the header
+     */
+    static BlockHasher forHeader(int num, int amount, Hash prevHash, int difficulty, Hash body) {
+        if ((prevHash != null && prevHash.length() != 32) || (body != null && body.length() != 32)) {
+            return new JcaBlockHasher(num, amount, prevHash, difficulty, body);
+        }
+        return new Sha256BlockHasher(num, amount, prevHash, difficulty, body);
+    }
+
+    @Override
+    public boolean isValidNonce(long nonce) {
+        compressLast(nonce);
+        int bits = difficulty;
+        for (int i = 0; bits > 0; i++, bits -= 32) {
+            int word = state[i] + chain[i];
+            if (bits < 32) {
+                return Integer.numberOfLeadingZeros(word) >= bits;
+            }
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Hash hash(long nonce) {
+        compressLast(nonce);
+        return new Hash(join(0), join(2), join(4), join(6));
+    }
+
+    // Runs the last block's rounds from the nonce words on, leaving the result in state.
+    private void compressLast(long nonce) {
+        int[] w = this.w;
+        int[] k = K;
+        w[nonceWord] = (int) (nonce >>> 32);
+        w[nonceWord + 1] = (int) nonce;
+        for (int t = firstVarying; t < 64; t++) {
+            w[t] = schedule(w, t);
+        }
+        int a = start[0];
+        int b = start[1];
+        int c = start[2];
+        int d = start[3];
+        int e = start[4];
+        int f = start[5];
+        int g = start[6];
+        int h = start[7];
+        for (int t = nonceWord; t < 64; t++) {
+            int t1 = h + (Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11)
+                    ^ Integer.rotateRight(e, 25)) + ((e & f) ^ (~e & g)) + k[t] + w[t];
+            int t2 = (Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13)
+                    ^ Integer.rotateRight(a, 22)) + ((a & b) ^ (a & c) ^ (b & c));
+            h = g;
+            g = f;
+            f = e;
+            e = d + t1;
+            d = c;
+            c = b;
+            b = a;
+            a = t1 + t2;
+        }
+        state[0] = a;
+        state[1] = b;
+        state[2] = c;
+        state[3] = d;
+        state[4] = e;
+        state[5] = f;
+        state[6] = g;
+        state[7] = h;
+    }
+
+    // Packs output words i and i + 1 into one big-endian long.
+    private long join(int i) {
+        return (long) (state[i] + chain[i]) << 32 | (state[i + 1] + chain[i + 1]) & 0xFFFFFFFFL;
+    }
+
+    private static int putHash(int[] message, int n, Hash hash) {
+        if (hash == null) {
+            return n;
+        }
+        for (int i = 0; i < 4; i++) {
+            long word = hash.word(i);
+            message[n++] = (int) (word >>> 32);
+            message[n++] = (int) word;
+        }
+        return n;
+    }
+
+    private static int schedule(int[] w, int t) {
+        int x = w[t - 15];
+        int y = w[t - 2];
+        int s0 = Integer.rotateRight(x, 7) ^ Integer.rotateRight(x, 18) ^ (x >>> 3);
+        int s1 = Integer.rotateRight(y, 17) ^ Integer.rotateRight(y, 19) ^ (y >>> 10);
+        return w[t - 16] + s0 + w[t - 7] + s1;
+    }
+
+    // Applies one round to the working variables in v.
+    private static void round(int[] v, int t, int wt) {
+        int e = v[4];
+        int a = v[0];
+        int t1 = v[7] + (Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11)
+                ^ Integer.rotateRight(e, 25)) + ((e & v[5]) ^ (~e & v[6])) + K[t] + wt;
+        int t2 = (Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13)
+                ^ Integer.rotateRight(a, 22)) + ((a & v[1]) ^ (a & v[2]) ^ (v[1] & v[2]));
+        System.arraycopy(v, 0, v, 1, 7);
+        v[4] += t1;
+        v[0] = t1 + t2;
+    }
+
+    // Compresses one whole message block into the chaining value.
+    private static void compress(int[] chain, int[] message, int off) {
+        int[] w = new int[64];
+        System.arraycopy(message, off, w, 0, 16);
+        for (int t = 16; t < 64; t++) {
+            w[t] = schedule(w, t);
+        }
+        int[] v = chain.clone();
+        for (int t = 0; t < 64; t++) {
+            round(v, t, w[t]);
+        }
+        for (int i = 0; i < 8; i++) {
+            chain[i] += v[i];
+        }
+    }
+}
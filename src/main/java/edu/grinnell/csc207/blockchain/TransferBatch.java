@@ -0,0 +1,152 @@
+package edu.grinnell.csc207.blockchain;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable batch of transfers between numbered accounts, carried by one block.
+ *
+ * Transfer i moves amount(i) from account from(i) to account to(i). Accounts 0 and
+ * 1 are Anna and Bob. The batch is committed to the block's hash through its
+ * Merkle root, so a whole batch costs one proof of work, and a single transfer can be
+ * shown to be in the batch with a MerkleProof of logarithmic size.
+ */
+public final class TransferBatch {
+    /**
+     * Anna's account number.
+     */
+    public static final int ANNA = 0;
+
+    /**
+     * Bob's account number.
+     */
+    public static final int BOB = 1;
+
+    private final int[] from;
+    private final int[] to;
+    private final int[] amounts;
+    private Hash root;
+
+    /**
+     * Constructs a batch from parallel arrays of payers, payees and positive amounts.
+     * The arrays are copied.
+     *
+     * @param from    the paying account of each transfer
+     * @param to      the receiving account of each transfer
+     * @param amounts the amount of each transfer
+     */
+    public TransferBatch(int[] from, int[] to, int[] amounts) {
+        if (from.length != to.length || from.length != amounts.length) {
+            throw new IllegalArgumentException("Transfer arrays must have the same length.");
+        }
+        if (from.length == 0) {
+            throw new IllegalArgumentException("A batch needs at least one transfer.");
+        }
+        for (int i = 0; i < from.length; i++) {
+            if (amounts[i] <= 0 || from[i] == to[i] || from[i] < 0 || to[i] < 0) {
+                throw new IllegalArgumentException("Transfer " + i + " is malformed.");
+            }
+        }
+        this.from = from.clone();
+        this.to = to.clone();
+        this.amounts = amounts.clone();
+    }
+
+    /**
+     * Returns the number of transfers in the batch.
+     *
+     * @return the transfer count
+     */
+    public int size() {
+        return from.length;
+    }
+
+    /**
+     * Returns the paying account of transfer i.
+     *
+     * @param i the transfer index
+     * @return the payer's account number
+     */
+    public int from(int i) {
+        return from[i];
+    }
+
+    /**
+     * Returns the receiving account of transfer i.
+     *
+     * @param i the transfer index
+     * @return the payee's account number
+     */
+    public int to(int i) {
+        return to[i];
+    }
+
+    /**
+     * Returns the amount of transfer i.
+     *
+     * @param i the transfer index
+     * @return the amount moved
+     */
+    public int amount(int i) {
+        return amounts[i];
+    }
+
+    /**
+     * Returns the Merkle root of the batch's transfers, which is part of the hashed
+     * header of the block carrying it. Computed once and cached.
+     *
+     * @return the batch's Merkle root
+     */
+    public Hash merkleRoot() {
+        Hash r = root;
+        if (r == null) {
+            r = fold(-1, null);
+            root = r;
+        }
+        return r;
+    }
+
+    /**
+     * Returns a proof that transfer i is part of this batch, checkable against the
+     * batch's Merkle root without the other transfers.
+     *
+     * @param i the transfer index
+     * @return the inclusion proof
+     */
+    public MerkleProof prove(int i) {
+        if (i < 0 || i >= from.length) {
+            throw new IndexOutOfBoundsException("No transfer " + i + " in a batch of " + from.length);
+        }
+        List<Hash> path = new ArrayList<>();
+        fold(i, path);
+        return new MerkleProof(i, from.length, from[i], to[i], amounts[i], path.toArray(new Hash[0]));
+    }
+
+    // Hashes the tree bottom-up in a single buffer, one level at a time, and returns the
+    // root. If path is not null, collects the siblings on the path of leaf index.
+    private Hash fold(int index, List<Hash> path) {
+        MessageDigest md = MerkleProof.newDigest();
+        byte[] level = new byte[32 * from.length];
+        for (int i = 0; i < from.length; i++) {
+            MerkleProof.leaf(md, from[i], to[i], amounts[i], level, 32 * i);
+        }
+        for (int count = from.length; count > 1; count = (count + 1) >>> 1) {
+            if (path != null && (index ^ 1) < count) {
+                byte[] sibling = new byte[32];
+                System.arraycopy(level, 32 * (index ^ 1), sibling, 0, 32);
+                path.add(new Hash(sibling));
+            }
+            index >>>= 1;
+            for (int i = 0; i + 1 < count; i += 2) {
+                MerkleProof.node(md, level, 32 * i, level, 32 * (i + 1), level, 16 * i);
+            }
+            if ((count & 1) == 1) {
+                System.arraycopy(level, 32 * (count - 1), level, 16 * (count - 1), 32);
+            }
+        }
+        byte[] top = new byte[32];
+        System.arraycopy(level, 0, top, 0, 32);
+        return new Hash(top);
+    }
+}
@@ -1,9 +1,45 @@
 package edu.grinnell.csc207.blockchain;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class Tests {
 
@@ -130,4 +166,931 @@ public class Tests {
         String actualMessage = exception.getMessage();
         assertTrue(actualMessage.contains(expectedMessage), "Expected insufficient funds error");
     }
+
+    @Test
+    @DisplayName("Parallel mining finds the same lowest nonce as sequential mining")
+    public void parallelMiningTest() {
+        Block sequential = new Block(1, -50, null);
+        try (ParallelMiner miner = new ParallelMiner(4)) {
+            Block parallel = new Block(1, -50, null, miner);
+            assertEquals(sequential.getNonce(), parallel.getNonce(), "Parallel miner should find the lowest nonce");
+            assertEquals(sequential.getHash(), parallel.getHash(), "Parallel miner should produce the same hash");
+        }
+    }
+
+    @Test
+    @DisplayName("Reusable block hasher matches a direct SHA-256 of the header")
+    public void blockHasherTest() throws Exception {
+        Hash prev = new Hash(new byte[]{0, 0, 0, 7});
+        MessageDigest md = MessageDigest.getInstance("sha-256");
+        md.update(ByteBuffer.allocate(8).putInt(3).putInt(-20).array());
+        md.update(prev.getData());
+        md.update(ByteBuffer.allocate(4).putInt(24).array());
+        md.update(ByteBuffer.allocate(8).putLong(123456789L).array());
+        Hash expected = new Hash(md.digest());
+        BlockHasher hasher = new JcaBlockHasher(3, -20, prev, 24, null);
+        hasher.hash(1);
+        assertEquals(expected, hasher.hash(123456789L), "Hasher should reuse its buffers correctly");
+    }
+
+    @Test
+    @DisplayName("Specialized SHA-256 engine matches the JCA engine for every header layout")
+    public void hashEngineTest() {
+        Random random = new Random(7);
+        Hash prev = new Block(0, 300, null, 0).getHash();
+        Hash body = new TransferBatch(new int[]{0}, new int[]{1}, new int[]{5}).merkleRoot();
+        Hash[][] layouts = {{null, null}, {prev, null}, {null, body}, {prev, body}};
+        for (Hash[] layout : layouts) {
+            for (int difficulty : new int[]{0, 1, 8, 31, 32, 33, 64, 256}) {
+                int num = random.nextInt();
+                int amount = random.nextInt();
+                BlockHasher jca = HashEngine.JCA.newHasher(num, amount, layout[0], difficulty, layout[1]);
+                BlockHasher fast = HashEngine.SPECIALIZED.newHasher(num, amount, layout[0], difficulty,
+                        layout[1]);
+                assertInstanceOf(Sha256BlockHasher.class, fast);
+                for (int i = 0; i < 200; i++) {
+                    long nonce = i < 100 ? i : random.nextLong();
+                    assertEquals(jca.hash(nonce), fast.hash(nonce));
+                    assertEquals(jca.isValidNonce(nonce), fast.isValidNonce(nonce));
+                }
+            }
+        }
+        // Hashes that are all zero up to some bit must be judged by the later output words too.
+        BlockHasher fast = HashEngine.SPECIALIZED.newHasher(0, 0, null, 8, null);
+        long nonce = new SequentialMiner().findNonce(new Block(0, 0, null, 8, 0L));
+        assertTrue(fast.isValidNonce(nonce));
+        int zeros = fast.hash(nonce).leadingZeroBits();
+        assertTrue(HashEngine.SPECIALIZED.newHasher(0, 0, null, zeros, null).isValidNonce(nonce));
+        assertFalse(HashEngine.SPECIALIZED.newHasher(0, 0, null, zeros + 1, null).isValidNonce(nonce));
+        // A short previous hash does not fit the fixed layout and falls back to JCA.
+        assertInstanceOf(JcaBlockHasher.class,
+                HashEngine.SPECIALIZED.newHasher(1, 0, new Hash(new byte[]{1}), 0, null));
+    }
+
+    @Test
+    @DisplayName("getBlock returns blocks by number and tracks removals")
+    public void getBlockTest() {
+        BlockChain chain = new BlockChain(300);
+        Block block1 = chain.mine(-150);
+        chain.append(block1);
+        assertSame(block1, chain.getBlock(1), "Block 1 should be the appended block");
+        assertEquals(0, chain.getBlock(0).getNum(), "Block 0 should be the genesis block");
+        chain.removeLast();
+        assertThrows(IndexOutOfBoundsException.class, () -> chain.getBlock(1));
+        assertEquals(1, chain.getSize(), "Chain should only hold the genesis block");
+    }
+
+    @Test
+    @DisplayName("Running balances follow append and are undone by removeLast")
+    public void runningBalancesTest() {
+        BlockChain chain = new BlockChain(300);
+        chain.append(chain.mine(-120));
+        assertArrayEquals(new int[]{180, 120}, chain.getBalances(), "Anna should have sent 120");
+        assertTrue(chain.balancesMatchReplay(), "Running balances should match a replay");
+        chain.removeLast();
+        assertArrayEquals(new int[]{300, 0}, chain.getBalances(), "removeLast should undo the transfer");
+        assertTrue(chain.balancesMatchReplay(), "Running balances should match a replay");
+    }
+
+    // Builds linked blocks with made-up hashes that pass Hash.isValid(), without mining.
+    private static Block[] syntheticBlocks(int count, int initial) {
+        Block[] blocks = new Block[count];
+        Hash prev = null;
+        for (int i = 0; i < count; i++) {
+            byte[] data = new byte[32];
+            data[28] = (byte) (i >>> 24);
+            data[29] = (byte) (i >>> 16);
+            data[30] = (byte) (i >>> 8);
+            data[31] = (byte) i;
+            int amount = i == 0 ? initial : (i % 2 == 1 ? -1 : 1);
+            blocks[i] = new Block(i, amount, prev, i, new Hash(data));
+            prev = blocks[i].getHash();
+        }
+        return blocks;
+    }
+
+    @Test
+    @DisplayName("Parallel validation finds the same first invalid block as sequential validation")
+    public void parallelValidationTest() {
+        int size = 5 * ChainValidator.SEGMENT_SIZE;
+        Block[] blocks = syntheticBlocks(size, 10);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        assertEquals(-1, ChainValidator.firstInvalidBlock(blocks, size, 24));
+        assertEquals(-1, ChainValidator.firstInvalidBlock(blocks, size, 24, pool));
+        // An overdraft late in the chain, then a broken link earlier on.
+        Block late = blocks[15000];
+        blocks[15000] = new Block(15000, -100, late.getPrevHash(), 0, late.getHash());
+        assertEquals(15000, ChainValidator.firstInvalidBlock(blocks, size, 24));
+        assertEquals(15000, ChainValidator.firstInvalidBlock(blocks, size, 24, pool));
+        blocks[9000] = new Block(9000, 1, blocks[1].getHash(), 0, blocks[9000].getHash());
+        assertEquals(9000, ChainValidator.firstInvalidBlock(blocks, size, 24));
+        assertEquals(9000, ChainValidator.firstInvalidBlock(blocks, size, 24, pool));
+        pool.shutdown();
+    }
+
+    @Test
+    @DisplayName("Block store survives reopening, removeLast and a torn final record")
+    public void blockStoreTest(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("chain.dat");
+        Block[] blocks = syntheticBlocks(4, 10);
+        try (BlockStore store = BlockStore.open(file, BlockStore.SyncPolicy.EVERY_WRITE)) {
+            for (Block blk : blocks) {
+                store.append(blk);
+            }
+            assertTrue(store.removeLast(), "removeLast should drop block 3");
+        }
+        try (BlockStore store = BlockStore.open(file, BlockStore.SyncPolicy.ON_CLOSE)) {
+            assertEquals(3, store.size(), "Removed block should stay removed");
+            assertEquals(blocks[2].getHash(), store.read(2).getHash(), "Store should end at block 2");
+            assertNull(store.read(0).getPrevHash(), "Genesis block should have no previous hash");
+            store.append(blocks[3]);
+        }
+        // Tear the last record, as if the machine crashed halfway through writing it.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(BlockStore.HEADER_SIZE + 3 * BlockStore.RECORD_SIZE + 40);
+        }
+        try (BlockStore store = BlockStore.open(file, BlockStore.SyncPolicy.NEVER)) {
+            assertEquals(3, store.size(), "Torn final record should be cut off");
+            assertEquals(blocks[2].getHash(), store.read(2).getHash());
+        }
+        // Corrupt the amount of the last record so its checksum no longer matches.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}),
+                    BlockStore.HEADER_SIZE + 2 * BlockStore.RECORD_SIZE + 7);
+        }
+        try (BlockStore store = BlockStore.open(file, BlockStore.SyncPolicy.NEVER)) {
+            assertEquals(2, store.size(), "Record with a bad checksum should be cut off");
+        }
+    }
+
+    @Test
+    @DisplayName("Checkpoints let reopening trust covered blocks and verify the rest")
+    public void checkpointTest(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("chain.dat");
+        Path checkpointFile = dir.resolve("chain.ckpt");
+        // Synthetic blocks carry made-up hashes, so only a checkpoint lets them load.
+        Block[] blocks = syntheticBlocks(5, 10);
+        try (BlockStore store = BlockStore.open(file, BlockStore.SyncPolicy.ON_CLOSE)) {
+            for (Block blk : blocks) {
+                store.append(blk);
+            }
+            assertThrows(IllegalArgumentException.class, () -> BlockChain.open(store, 0));
+            BlockChain chain = BlockChain.open(store, 0, new Checkpoint(5, blocks[4].getHash(), 10, 0));
+            chain.checkpoint().write(checkpointFile);
+            assertEquals(0, chain.verifyInBackground().get(), "Background check should catch block 0");
+        }
+        Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+        assertEquals(5, checkpoint.getHeight());
+        assertEquals(blocks[4].getHash(), checkpoint.getTipHash());
+        try (BlockStore store = BlockStore.open(file, BlockStore.SyncPolicy.ON_CLOSE)) {
+            BlockChain chain = BlockChain.open(store, 0, checkpoint);
+            assertEquals(5, chain.getSize());
+            assertArrayEquals(new int[]{10, 0}, chain.getBalances());
+            // A block after the checkpoint must carry a genuine hash.
+            store.append(syntheticBlocks(6, 10)[5]);
+            assertThrows(IllegalArgumentException.class, () -> BlockChain.open(store, 0, checkpoint));
+        }
+        byte[] contents = Files.readAllBytes(checkpointFile);
+        contents[6] ^= 1;
+        Files.write(checkpointFile, contents);
+        assertThrows(IOException.class, () -> Checkpoint.read(checkpointFile));
+    }
+
+    @Test
+    @DisplayName("Hash copies its bytes and round-trips them")
+    public void hashImmutabilityTest() {
+        byte[] data = new byte[32];
+        data[3] = (byte) 0xab;
+        data[31] = 7;
+        Hash hash = new Hash(data);
+        data[0] = 1;
+        assertTrue(hash.isValid(), "Changing the source array should not affect the hash");
+        hash.getData()[1] = 1;
+        assertArrayEquals(new byte[]{0, 0, 0, (byte) 0xab}, Arrays.copyOf(hash.getData(), 4));
+        assertEquals(new Hash(hash.getData()), hash, "Round-tripped hash should be equal");
+        assertEquals(new Hash(hash.getData()).hashCode(), hash.hashCode());
+        assertEquals("000000ab" + "00".repeat(27) + "07", hash.toString());
+        assertNotEquals(new Hash(new byte[]{0, 0, 0}), new Hash(new byte[]{0, 0, 0, 0}));
+    }
+
+    @Test
+    @DisplayName("Blocks are mined and validated at their declared difficulty")
+    public void difficultyTest() {
+        BlockChain chain = new BlockChain(300, 8);
+        Block block1 = chain.mine(-100);
+        assertEquals(8, block1.getDifficulty());
+        assertTrue(block1.getHash().isValid(8), "Mined hash should have 8 leading zero bits");
+        chain.append(block1);
+        assertTrue(chain.isValidBlockChain());
+        // The difficulty is part of the header, so the same nonce hashes differently.
+        Block relabeled = new Block(1, -100, block1.getPrevHash(), 9, block1.getNonce());
+        assertNotEquals(block1.getHash(), relabeled.getHash());
+        // A block below the chain's minimum difficulty makes the chain invalid.
+        chain.removeLast();
+        chain.append(new Block(1, -100, chain.getHash(), 4, new SequentialMiner()));
+        assertEquals(1, chain.firstInvalidBlock());
+    }
+
+    @Test
+    @DisplayName("Retargeting raises difficulty when blocks are mined faster than the target")
+    public void retargetingTest() {
+        BlockChain chain = new BlockChain(300, 2);
+        chain.setRetargeting(new Retargeting(2, 60_000_000_000L, 2, 10));
+        for (int i = 0; i < 6; i++) {
+            chain.append(chain.mine(0));
+        }
+        assertEquals(10, chain.nextDifficulty(), "Fast blocks should push difficulty to the maximum");
+        assertTrue(chain.getBlock(6).getDifficulty() > 2, "Later blocks should be harder");
+        assertTrue(chain.isValidBlockChain());
+    }
+
+    @Test
+    @DisplayName("appendAll applies a valid batch and rejects a bad one atomically")
+    public void appendAllTest() {
+        Block[] blocks = syntheticBlocks(6, 10);
+        BlockChain chain = new BlockChain(blocks[0]);
+        chain.appendAll(List.of(blocks[1], blocks[2]));
+        assertEquals(3, chain.getSize());
+        assertArrayEquals(new int[]{10, 0}, chain.getBalances());
+        // Block 5 overdraws Bob, so blocks 3 and 4 must not be appended either.
+        Block overdraft = new Block(5, 50, blocks[4].getHash(), 5, blocks[5].getHash());
+        Exception e = assertThrows(IllegalArgumentException.class,
+                () -> chain.appendAll(List.of(blocks[3], blocks[4], overdraft)));
+        assertEquals("Block 5 (batch index 2): Insufficient funds for Bob.", e.getMessage());
+        assertEquals(3, chain.getSize(), "A rejected batch should leave the chain unchanged");
+        assertArrayEquals(new int[]{10, 0}, chain.getBalances());
+        chain.appendAll(List.of(blocks[3], blocks[4], blocks[5]));
+        assertEquals(blocks[5].getHash(), chain.getHash());
+        assertTrue(chain.isValidBlockChain());
+    }
+
+    @Test
+    @DisplayName("Mining service completes, times out, cancels and applies back-pressure")
+    public void miningServiceTest() throws Exception {
+        BlockChain chain = new BlockChain(300, 8);
+        try (MiningService service = new MiningService(1, 2)) {
+            Block mined = service.mine(chain, -10, Duration.ofSeconds(30)).get(30, TimeUnit.SECONDS);
+            assertEquals(chain.mine(-10).getNonce(), mined.getNonce(), "Service should find the lowest nonce");
+            chain.append(mined);
+
+            // 64 bits of difficulty cannot be met, so these only end by deadline or cancellation.
+            CompletableFuture<Block> slow = service.mine(2, 0, chain.getHash(), 64, Duration.ofMillis(200));
+            CompletableFuture<Block> cancelled = service.mine(2, 0, chain.getHash(), 64, Duration.ofHours(1));
+            CompletableFuture<Block> rejected = service.mine(2, 0, chain.getHash(), 8, Duration.ofHours(1));
+            ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get());
+            assertInstanceOf(RejectedExecutionException.class, e.getCause());
+            e = assertThrows(ExecutionException.class, () -> slow.get(30, TimeUnit.SECONDS));
+            assertInstanceOf(TimeoutException.class, e.getCause());
+            cancelled.cancel(true);
+            // The single hashing thread must have been freed for this request to finish.
+            Block next = service.mine(chain, 5, Duration.ofSeconds(30)).get(30, TimeUnit.SECONDS);
+            chain.append(next);
+            assertTrue(chain.isValidBlockChain());
+        }
+    }
+
+    @Test
+    @DisplayName("Binary chain streams round-trip and fail at the first corrupted block")
+    public void chainCodecTest(@TempDir Path dir) throws Exception {
+        BlockChain chain = new BlockChain(300, 8);
+        chain.append(chain.mine(-100));
+        chain.append(chain.mine(40));
+        chain.append(chain.mine(-5));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChainCodec.write(chain, out);
+        byte[] bytes = out.toByteArray();
+        assertEquals(16 + 4 * 14, bytes.length, "Each block should take 14 bytes");
+
+        BlockChain copy = ChainCodec.read(new ByteArrayInputStream(bytes));
+        assertEquals(chain.toString(), copy.toString());
+        assertArrayEquals(chain.getBalances(), copy.getBalances());
+
+        // Reading stops at the end of the chain, leaving what follows in the stream.
+        byte[] followed = Arrays.copyOf(bytes, bytes.length + 1);
+        followed[bytes.length] = 42;
+        ByteArrayInputStream in = new ByteArrayInputStream(followed);
+        ChainCodec.read(in);
+        assertEquals(42, in.read());
+        Path file = dir.resolve("chain.bin");
+        Files.write(file, followed);
+        try (FileChannel channel = FileChannel.open(file)) {
+            assertEquals(chain.toString(), ChainCodec.read(channel).toString());
+            assertEquals(bytes.length, channel.position(), "The channel is left just after the chain");
+        }
+
+        // Flip a bit in block 2's nonce.
+        byte[] corrupt = bytes.clone();
+        corrupt[16 + 2 * 14 + 13] ^= 1;
+        IOException e = assertThrows(IOException.class, () -> ChainCodec.read(new ByteArrayInputStream(corrupt)));
+        assertTrue(e.getMessage().startsWith("Block 2:"), e.getMessage());
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 3);
+        assertThrows(EOFException.class, () -> ChainCodec.read(new ByteArrayInputStream(truncated)));
+        byte[] older = bytes.clone();
+        older[7] = 1;
+        e = assertThrows(IOException.class, () -> ChainCodec.read(new ByteArrayInputStream(older)));
+        assertEquals("Not a version 2 chain stream", e.getMessage());
+    }
+
+    @Test
+    @DisplayName("Hash index finds blocks by hash and forgets removed ones")
+    public void hashIndexTest() {
+        Block[] blocks = syntheticBlocks(200, 10);
+        BlockChain chain = new BlockChain(blocks[0]);
+        chain.appendAll(Arrays.asList(blocks).subList(1, 200));
+        for (Block blk : blocks) {
+            assertSame(blk, chain.findByHash(blk.getHash()));
+        }
+        for (int i = 0; i < 150; i++) {
+            chain.removeLast();
+        }
+        assertFalse(chain.containsHash(blocks[50].getHash()), "Removed blocks should leave the index");
+        assertSame(blocks[49], chain.findByHash(blocks[49].getHash()));
+        assertSame(blocks[0], chain.findByHash(new Hash(blocks[0].getHash().getData())));
+        byte[] unknown = new byte[32];
+        unknown[5] = 1;
+        assertNull(chain.findByHash(new Hash(unknown)));
+        chain.appendAll(Arrays.asList(blocks).subList(50, 200));
+        assertSame(blocks[199], chain.findByHash(blocks[199].getHash()));
+    }
+
+    @Test
+    @DisplayName("Transfer blocks move money between many accounts and undo exactly")
+    public void transferBlockTest() throws IOException {
+        BlockChain chain = new BlockChain(100, 8);
+        Miner miner = new SequentialMiner();
+        TransferBatch pay = new TransferBatch(new int[]{0, 2}, new int[]{2, 3}, new int[]{30, 10});
+        chain.append(chain.mine(pay, miner));
+        assertArrayEquals(new int[]{70, 0}, chain.getBalances());
+        assertEquals(20, chain.getBalance(2));
+        assertEquals(10, chain.getBalance(3));
+        assertTrue(chain.getBlock(1).toString().contains("Transfers: 2"));
+
+        // The second transfer overdraws account 3, so neither may apply.
+        TransferBatch overdraw = new TransferBatch(new int[]{3, 3}, new int[]{4, 5}, new int[]{5, 6});
+        Block bad = chain.mine(overdraw, miner);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> chain.append(bad));
+        assertEquals("Transfer 1: Insufficient funds for account 3.", e.getMessage());
+        assertEquals(10, chain.getBalance(3));
+        assertEquals(0, chain.getBalance(4));
+
+        chain.append(chain.mine(-20, miner));
+        assertTrue(chain.isValidBlockChain());
+        assertThrows(IllegalStateException.class, chain::checkpoint);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChainCodec.write(chain, out);
+        BlockChain copy = ChainCodec.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(chain.toString(), copy.toString());
+        assertEquals(20, copy.getBalance(2));
+
+        // The batch is part of the hash, so swapping it out breaks the block.
+        Block first = chain.getBlock(1);
+        Block forged = new Block(1, overdraw, first.getPrevHash(), first.getDifficulty(), first.getNonce());
+        assertNotEquals(first.getHash(), forged.getHash());
+
+        chain.removeLast();
+        chain.removeLast();
+        assertArrayEquals(new int[]{100, 0}, chain.getBalances());
+        assertEquals(0, chain.getBalance(2));
+    }
+
+    @Test
+    @DisplayName("Balances of hundreds of thousands of accounts stay fast to look up")
+    public void manyAccountsTest() {
+        int accounts = 300_000;
+        int[] from = new int[accounts];
+        int[] to = new int[accounts];
+        int[] amounts = new int[accounts];
+        for (int i = 0; i < accounts; i++) {
+            to[i] = i + 2;
+            amounts[i] = 1;
+        }
+        BlockChain chain = new BlockChain(new Block(0, accounts, null, 0, 0L));
+        Block funding = new Block(1, new TransferBatch(from, to, amounts), chain.getHash(), 0, 0L);
+        // Home slots once came from only 16 hash bits, making this quadratic past 65,536 accounts.
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            chain.append(funding);
+            for (int i = 0; i < accounts; i++) {
+                assertEquals(1, chain.getBalance(i + 2));
+            }
+        });
+        assertEquals(0, chain.getBalance(TransferBatch.ANNA));
+        chain.removeLast();
+        assertEquals(0, chain.getBalance(accounts + 1));
+    }
+
+    @Test
+    @DisplayName("Merkle proofs show a single transfer is in a block, checked from headers alone")
+    public void merkleProofTest() throws IOException {
+        BlockChain chain = new BlockChain(1000, 8);
+        int[] from = new int[7];
+        int[] to = new int[7];
+        int[] amounts = new int[7];
+        for (int i = 0; i < 7; i++) {
+            to[i] = i + 2;
+            amounts[i] = 10 * (i + 1);
+        }
+        TransferBatch batch = new TransferBatch(from, to, amounts);
+        chain.append(chain.mine(batch, new SequentialMiner()));
+        chain.append(chain.mine(-5, new SequentialMiner()));
+
+        BlockHeader header = chain.getBlock(1).getHeader();
+        for (int i = 0; i < 7; i++) {
+            MerkleProof proof = batch.prove(i);
+            assertTrue(proof.length() <= 3, "Proofs should take at most log2(n) hashes");
+            assertEquals(amounts[i], proof.getAmount());
+            assertTrue(header.includes(proof), "Transfer " + i + " should be proven");
+        }
+        TransferBatch other = new TransferBatch(new int[]{0}, new int[]{2}, new int[]{11});
+        assertFalse(header.includes(other.prove(0)), "A transfer from another batch is not included");
+        assertFalse(chain.getBlock(2).getHeader().includes(batch.prove(0)), "Two-party blocks include nothing");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChainCodec.writeHeaders(chain, out);
+        byte[] bytes = out.toByteArray();
+        assertEquals(16 + 3 * 14 + 32, bytes.length, "Headers carry the root, not the transfers");
+        ByteArrayInputStream in = new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length + 8));
+        List<BlockHeader> headers = ChainCodec.readHeaders(in);
+        assertEquals(8, in.available(), "Bytes after the headers stay unread");
+        assertEquals(-1, BlockHeader.firstInvalidHeader(headers, 8));
+        assertEquals(-1, BlockHeader.firstInvalidHeader(chain.getHeaders(), 8));
+        assertTrue(headers.get(1).includes(batch.prove(6)));
+
+        // A header claiming a different body root no longer matches its hash.
+        BlockHeader forged = new BlockHeader(1, 0, header.getPrevHash(), header.getDifficulty(),
+                other.merkleRoot(), header.getNonce(), header.getHash());
+        headers.set(1, forged);
+        assertEquals(1, BlockHeader.firstInvalidHeader(headers, 8));
+    }
+
+    @Test
+    @DisplayName("Metrics count mining, appends and rejections and are readable over JMX")
+    public void metricsTest() throws Exception {
+        assertTrue(Metrics.ENABLED, "Tests run with -Dblockchain.metrics=true");
+        Metrics metrics = Metrics.get();
+        long hashes = metrics.getHashes();
+        long mined = metrics.getBlocksMined();
+        long appended = metrics.getBlocksAppended();
+        long funds = metrics.getRejections().get("FUNDS");
+        long validations = metrics.getValidationLatency().getCount();
+
+        BlockChain chain = new BlockChain(10, 8);
+        Block blk = chain.mine(-4);
+        chain.append(blk);
+        assertThrows(IllegalArgumentException.class, () -> chain.append(chain.mine(-50)));
+        assertTrue(chain.isValidBlockChain());
+
+        assertTrue(metrics.getHashes() - hashes >= blk.getNonce() + 1, "Every nonce tried is a hash");
+        assertEquals(3, metrics.getBlocksMined() - mined, "Genesis and two mined blocks");
+        assertEquals(1, metrics.getBlocksAppended() - appended);
+        assertEquals(1, metrics.getRejections().get("FUNDS") - funds);
+        assertEquals(1, metrics.getValidationLatency().getCount() - validations);
+
+        ObjectName name = Metrics.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(metrics.getBlocksAppended(), server.getAttribute(name, "BlocksAppended"));
+        CompositeData mining = (CompositeData) server.getAttribute(name, "MiningLatency");
+        assertEquals(metrics.getMiningLatency().getCount(), mining.get("count"));
+        assertTrue(Metrics.report().contains("mining:"));
+    }
+
+    @Test
+    @DisplayName("Metrics record nothing when disabled")
+    public void metricsDisabledTest() {
+        assumeFalse(Metrics.ENABLED, "Only the metrics-off surefire execution disables metrics");
+        Metrics metrics = Metrics.get();
+        assertFalse(metrics.isEnabled());
+        assertEquals(0, Metrics.start());
+
+        BlockChain chain = new BlockChain(10, 8);
+        chain.append(chain.mine(-4));
+        assertThrows(IllegalArgumentException.class, () -> chain.append(chain.mine(-50)));
+        chain.removeLast();
+        assertTrue(chain.isValidBlockChain());
+
+        assertEquals(0, metrics.getHashes());
+        assertEquals(0, metrics.getBlocksMined());
+        assertEquals(0, metrics.getBlocksAppended());
+        assertEquals(0, metrics.getRejections().get("FUNDS"));
+        assertEquals(0, metrics.getValidationLatency().getCount());
+    }
+
+    @Test
+    @DisplayName("Scripts run compound commands and print compact results only")
+    public void scriptRunnerTest(@TempDir Path dir) throws IOException {
+        Path saved = dir.resolve("chain.bin");
+        String script = String.join("\n",
+                "# Anna pays Bob three times, then Bob pays back once.",
+                "mine-append -10 3",
+                "mine-append 5",
+                "report",
+                "append -1000 0",
+                "save " + saved,
+                "remove",
+                "load " + saved,
+                "check",
+                "bogus",
+                "quit",
+                "report");
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        ScriptRunner runner = new ScriptRunner(new BlockChain(100, 8), new SequentialMiner(), true, true, out);
+        assertEquals(2, runner.run(new BufferedReader(new StringReader(script))));
+        out.flush();
+        String[] lines = text.toString().split("\\R");
+        assertEquals("ok 4", lines[0]);
+        assertEquals("ok 5", lines[1]);
+        assertEquals("balances 75 25", lines[2]);
+        assertEquals("err Insufficient funds for Anna.", lines[3]);
+        assertEquals("ok 5", lines[4]);
+        assertEquals("ok 4", lines[5]);
+        assertEquals("ok 5", lines[6]);
+        assertEquals("valid", lines[7]);
+        assertEquals("err Invalid command: bogus", lines[8]);
+        assertEquals(9, lines.length, "Nothing runs after quit");
+        assertEquals(5, runner.getChain().getSize());
+    }
+
+    @Test
+    @DisplayName("Balances at any height match a replay of the chain up to that height")
+    public void balanceHistoryTest() {
+        Block[] blocks = syntheticBlocks(300, 10);
+        BlockChain chain = new BlockChain(blocks[0]);
+        chain.setHistoryInterval(16);
+        chain.appendAll(Arrays.asList(blocks).subList(1, 100));
+        for (int i = 100; i < 300; i++) {
+            chain.append(blocks[i]);
+        }
+        for (int h = 0; h < 300; h++) {
+            assertArrayEquals(new int[]{h % 2 == 1 ? 9 : 10, h % 2 == 1 ? 1 : 0}, chain.getBalancesAt(h),
+                    "Balances after block " + h);
+        }
+        for (int i = 0; i < 150; i++) {
+            chain.removeLast();
+        }
+        chain.append(blocks[150]);
+        assertArrayEquals(new int[]{9, 1}, chain.getBalancesAt(149));
+        assertArrayEquals(new int[]{10, 0}, chain.getBalancesAt(150));
+        assertThrows(IndexOutOfBoundsException.class, () -> chain.getBalancesAt(151));
+        chain.setHistoryInterval(1);
+        assertArrayEquals(new int[]{9, 1}, chain.getBalancesAt(49));
+        assertEquals(1, chain.getHistoryInterval());
+    }
+
+    @Test
+    @DisplayName("Readers of a concurrent chain always see consistent snapshots while a writer works")
+    public void concurrentChainTest() throws Exception {
+        Block[] blocks = syntheticBlocks(3 * ChainSnapshot.CHUNK_SIZE, 10);
+        ConcurrentBlockChain chain = new ConcurrentBlockChain(new BlockChain(blocks[0]));
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[4];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                while (!done.get() && failure.get() == null) {
+                    ChainSnapshot snap = chain.snapshot();
+                    int size = snap.getSize();
+                    int[] expected = {size % 2 == 0 ? 9 : 10, size % 2 == 0 ? 1 : 0};
+                    Block tip = snap.getBlock(size - 1);
+                    if (tip != blocks[size - 1] || !snap.getHash().equals(tip.getHash())
+                            || !Arrays.equals(expected, snap.getBalances())
+                            || snap.getBlock(size / 2) != blocks[size / 2]) {
+                        failure.set("Inconsistent snapshot of size " + size);
+                    }
+                }
+            });
+            readers[r].start();
+        }
+        // Grow the chain across chunk boundaries, shrinking it now and then so that
+        // slots older snapshots can see are written again.
+        ChainSnapshot early = null;
+        for (int i = 1; i < blocks.length; i++) {
+            chain.append(blocks[i]);
+            if (i == ChainSnapshot.CHUNK_SIZE + 5) {
+                early = chain.snapshot();
+            }
+            if (i % 97 == 0) {
+                for (int k = 0; k < 40; k++) {
+                    chain.removeLast();
+                }
+                chain.appendAll(Arrays.asList(blocks).subList(i - 39, i + 1));
+            }
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertEquals(blocks.length, chain.getSize());
+        assertTrue(chain.snapshot().isValidBlockChain());
+        assertEquals(ChainSnapshot.CHUNK_SIZE + 6, early.getSize());
+        assertSame(blocks[ChainSnapshot.CHUNK_SIZE + 5], early.getBlock(early.getSize() - 1));
+        assertTrue(early.isValidBlockChain());
+
+        // Replacing the tip must not change what an older snapshot sees.
+        ChainSnapshot before = chain.snapshot();
+        int last = blocks.length - 1;
+        chain.removeLast();
+        byte[] other = new byte[32];
+        other[10] = 1;
+        chain.append(new Block(last, 0, blocks[last - 1].getHash(), 0, new Hash(other)));
+        assertSame(blocks[last], before.getBlock(last));
+        assertEquals(new Hash(other), chain.getHash());
+    }
+
+    // Returns a block with a made-up hash unique to its number and branch tag.
+    private static Block forkBlock(int num, int amount, Block parent, int tag) {
+        byte[] data = new byte[32];
+        data[27] = (byte) tag;
+        data[31] = (byte) num;
+        return new Block(num, amount, parent.getHash(), num, new Hash(data));
+    }
+
+    @Test
+    @DisplayName("Block tree follows the branch with the most work and prunes stale branches")
+    public void blockTreeTest() {
+        Block[] main = syntheticBlocks(5, 10);
+        BlockChain chain = new BlockChain(main[0]);
+        BlockTree tree = new BlockTree(chain, 3);
+        for (int i = 1; i < 5; i++) {
+            assertEquals(BlockTree.Outcome.EXTENDED, tree.add(main[i]));
+        }
+        // A branch off block 2 where Anna pays Bob 5 each time.
+        Block a3 = forkBlock(3, -5, main[2], 1);
+        Block a4 = forkBlock(4, -5, a3, 1);
+        Block a5 = forkBlock(5, 0, a4, 1);
+        assertEquals(BlockTree.Outcome.SIDE_BRANCH, tree.add(a3));
+        assertEquals(BlockTree.Outcome.SIDE_BRANCH, tree.add(a4), "Equal work keeps the main chain");
+        assertEquals(BlockTree.Outcome.REORGANIZED, tree.add(a5));
+        assertSame(a5, chain.getBlock(5));
+        assertSame(a3, chain.getBlock(3));
+        assertArrayEquals(new int[]{0, 10}, chain.getBalances());
+        assertTrue(chain.isValidBlockChain());
+        assertEquals(2, tree.getSideBlockCount(), "The replaced blocks 3 and 4 stay as a side branch");
+
+        // Switching back needs two more blocks on the old branch.
+        Block b5 = forkBlock(5, -1, main[4], 2);
+        Block b6 = forkBlock(6, 1, b5, 2);
+        assertEquals(BlockTree.Outcome.SIDE_BRANCH, tree.add(b5));
+        assertEquals(BlockTree.Outcome.REORGANIZED, tree.add(b6));
+        assertSame(main[4], chain.getBlock(4));
+        assertSame(b6, chain.getBlock(6));
+        assertArrayEquals(new int[]{10, 0}, chain.getBalances());
+        assertEquals(2, tree.getReorganizations());
+
+        // A heavier branch where Bob overdraws is refused and the main chain is kept.
+        // The bad block and everything on it leave the tree.
+        int sideBlocks = tree.getSideBlockCount();
+        Block c6 = forkBlock(6, 50, b5, 3);
+        Block c7 = forkBlock(7, 0, c6, 3);
+        assertEquals(BlockTree.Outcome.SIDE_BRANCH, tree.add(c6));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> tree.add(c7));
+        assertTrue(e.getMessage().contains("Insufficient funds for Bob."), e.getMessage());
+        assertEquals(7, chain.getSize());
+        assertSame(b6, chain.getBlock(6));
+        assertArrayEquals(new int[]{10, 0}, chain.getBalances());
+        assertEquals(sideBlocks, tree.getSideBlockCount());
+        e = assertThrows(IllegalArgumentException.class, () -> tree.add(forkBlock(7, 0, c6, 6)));
+        assertEquals("Unknown parent block.", e.getMessage());
+
+        // Extending the tip prunes side blocks more than 3 below it, and forks that deep are refused.
+        Block tip = b6;
+        for (int i = 7; i < 11; i++) {
+            tip = forkBlock(i, 0, tip, 4);
+            assertEquals(BlockTree.Outcome.EXTENDED, tree.add(tip));
+        }
+        assertEquals(0, tree.getSideBlockCount());
+        assertThrows(IllegalArgumentException.class, () -> tree.add(forkBlock(4, 0, main[3], 5)));
+        assertTrue(chain.isValidBlockChain());
+    }
+
+    // A block with a made-up hash that meets any difficulty up to 200 bits.
+    private static Block workBlock(int num, Block parent, int difficulty, int tag) {
+        byte[] data = new byte[32];
+        data[27] = (byte) tag;
+        data[31] = (byte) num;
+        return new Block(num, 0, parent.getHash(), difficulty, 0L, new Hash(data));
+    }
+
+    @Test
+    @DisplayName("Block tree scores forks correctly after a shorter, heavier branch wins")
+    public void blockTreeShortBranchTest() {
+        Block[] main = new Block[11];
+        main[0] = new Block(0, 10, null, 1, 0L, new Hash(new byte[32]));
+        for (int i = 1; i < main.length; i++) {
+            main[i] = workBlock(i, main[i - 1], 1, 0);
+        }
+        BlockChain chain = new BlockChain(main[0]);
+        BlockTree tree = new BlockTree(chain, 2);
+        for (int i = 1; i < main.length; i++) {
+            tree.add(main[i]);
+        }
+        assertEquals(BigInteger.valueOf(22), tree.getWork());
+        Block easy = workBlock(11, main[10], 0, 0);
+        assertThrows(IllegalArgumentException.class, () -> tree.add(easy), "Below the minimum difficulty");
+        assertEquals(11, chain.getSize());
+        assertEquals(BigInteger.valueOf(22), tree.getWork());
+
+        // One heavy block off block 8 outweighs blocks 9 and 10.
+        Block heavy = workBlock(9, main[8], 12, 1);
+        assertEquals(BlockTree.Outcome.REORGANIZED, tree.add(heavy));
+        assertEquals(10, chain.getSize());
+        assertEquals(BigInteger.valueOf(18 + 4096), tree.getWork());
+
+        // An equally heavy block off block 7 has less work than the new main chain.
+        assertEquals(BlockTree.Outcome.SIDE_BRANCH, tree.add(workBlock(8, main[7], 12, 2)));
+        assertSame(heavy, chain.getBlock(9));
+        assertEquals(BigInteger.valueOf(18 + 4096), tree.getWork());
+
+        // A branch whose second block overdraws Bob loses that block but keeps the first.
+        int sideBlocks = tree.getSideBlockCount();
+        Block rival = workBlock(9, main[8], 12, 3);
+        assertEquals(BlockTree.Outcome.SIDE_BRANCH, tree.add(rival));
+        Block overdraw = new Block(10, 50, rival.getHash(), 1, 0L, workBlock(10, rival, 1, 3).getHash());
+        assertThrows(IllegalArgumentException.class, () -> tree.add(overdraw));
+        assertSame(heavy, chain.getBlock(9));
+        assertEquals(sideBlocks + 1, tree.getSideBlockCount());
+        assertEquals(BlockTree.Outcome.REORGANIZED, tree.add(workBlock(10, rival, 1, 4)));
+        assertSame(rival, chain.getBlock(9));
+    }
+
+    @Test
+    @DisplayName("Columnar chain stores blocks off-heap across chunks and rebuilds them on demand")
+    public void columnarChainTest() {
+        BlockChain chain = new BlockChain(100, 2);
+        for (int i = 1; i < 40; i++) {
+            chain.append(chain.mine(i % 3 == 0 ? 2 : -1));
+        }
+        ColumnarBlockChain columns = new ColumnarBlockChain(chain.getBlock(0), 3);
+        for (int i = 1; i < chain.getSize(); i++) {
+            columns.append(chain.getBlock(i));
+        }
+        assertEquals(chain.getSize(), columns.getSize());
+        assertEquals(5 * 8 * ColumnarBlockChain.BYTES_PER_BLOCK, columns.getOffHeapBytes());
+        for (int i = 0; i < chain.getSize(); i++) {
+            Block expected = chain.getBlock(i);
+            Block view = columns.getBlock(i);
+            assertEquals(expected.toString(), view.toString());
+            assertEquals(expected.getHash(), view.getHash());
+        }
+        assertArrayEquals(chain.getBalances(), columns.getBalances());
+        assertArrayEquals(chain.getBalances(), columns.computeBalances());
+        assertTrue(columns.isValidBlockChain());
+
+        Block overdraw = columns.mine(500);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> columns.append(overdraw));
+        assertEquals("Insufficient funds for Bob.", e.getMessage());
+        assertThrows(IllegalArgumentException.class,
+                () -> columns.append(new Block(40, 1, chain.getBlock(38).getHash(), 2, 0L)));
+
+        // Removing blocks back over a chunk boundary undoes their amounts.
+        for (int i = 0; i < 10; i++) {
+            assertTrue(columns.removeLast());
+            chain.removeLast();
+        }
+        assertArrayEquals(chain.getBalances(), columns.getBalances());
+        assertEquals(chain.getHash(), columns.getHash());
+        Block next = columns.mine(-3);
+        columns.append(next);
+        assertEquals(next.getHash(), columns.getBlock(30).getHash());
+        assertThrows(IndexOutOfBoundsException.class, () -> columns.getBlock(31));
+        assertTrue(columns.isValidBlockChain());
+    }
+
+    @Test
+    @DisplayName("Peer nodes catch up on a long chain and relay new blocks to nodes further away")
+    public void peerNodeTest() throws Exception {
+        BlockChain source = new BlockChain(100, 4);
+        for (int i = 1; i < 1_500; i++) {
+            source.append(source.mine(i % 2 == 0 ? 1 : -1));
+        }
+        int length = source.getSize();
+        Hash sourceTip = source.getHash();
+        BlockChain relayed = new BlockChain(source.getBlock(0));
+        BlockChain far = new BlockChain(source.getBlock(0));
+        try (PeerNode a = new PeerNode(source);
+                PeerNode b = new PeerNode(relayed);
+                PeerNode c = new PeerNode(far)) {
+            b.connect(a.getAddress()).get(5, TimeUnit.SECONDS);
+            c.connect(b.getAddress()).get(5, TimeUnit.SECONDS);
+            assertTrue(c.awaitHeight(length, Duration.ofSeconds(20)), "C reached " + c.getHeight());
+            assertEquals(sourceTip, b.getHash());
+            assertEquals(sourceTip, c.getHash());
+
+            // A new block on A is announced to B, which passes it on to C.
+            Block next = new Block(length, -5, a.getHash(), 4, new SequentialMiner());
+            a.append(next).get(5, TimeUnit.SECONDS);
+            assertTrue(c.awaitHeight(length + 1, Duration.ofSeconds(10)));
+            assertEquals(next.getHash(), c.getHash());
+
+            // A block that is not mined is refused before anything is announced.
+            Block forged = new Block(length + 1, 5, next.getHash(), 4, 0L);
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> a.append(forged).get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalArgumentException.class, e.getCause());
+            assertEquals(2, b.getPeerCount());
+        }
+        assertEquals(length + 1, far.getSize());
+        assertTrue(far.isValidBlockChain());
+        assertArrayEquals(source.getBalances(), far.getBalances());
+    }
+
+    @Test
+    @DisplayName("A peer sending an oversized block range is dropped without stopping the node")
+    public void peerNodeBadFrameTest() throws Exception {
+        BlockChain chain = new BlockChain(100, 0);
+        try (PeerNode node = new PeerNode(chain);
+                SocketChannel bad = SocketChannel.open(node.getAddress())) {
+            // HELLO claiming to be far ahead, then a BLOCKS frame with a huge count.
+            ByteBuffer frames = ByteBuffer.allocate(64);
+            frames.putInt(1 + 32 + 4).put((byte) 1).put(chain.getBlock(0).getHash().getData())
+                    .putInt(1_000);
+            frames.putInt(1 + 8).put((byte) 3).putInt(1).putInt(Integer.MAX_VALUE);
+            frames.flip();
+            while (frames.hasRemaining()) {
+                bad.write(frames);
+            }
+            // The node closes the connection, and reading it ends.
+            ByteBuffer sink = ByteBuffer.allocate(1 << 16);
+            bad.socket().setSoTimeout(5_000);
+            while (bad.read(sink) >= 0) {
+                sink.clear();
+            }
+            assertEquals(0, node.getPeerCount());
+
+            BlockChain source = new BlockChain(chain.getBlock(0));
+            source.append(source.mine(-5));
+            try (PeerNode good = new PeerNode(source)) {
+                node.connect(good.getAddress()).get(5, TimeUnit.SECONDS);
+                assertTrue(node.awaitHeight(2, Duration.ofSeconds(5)), "The node still syncs");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Mempool refuses overdrafts and a producer mines its transfers in priority order")
+    public void blockProducerTest() throws Exception {
+        BlockChain chain = new BlockChain(1_000, 4);
+        // The lowest priority sorts last rather than overflowing to the highest.
+        Mempool ranked = new Mempool(chain, Mempool.Ordering.PRIORITY, 10);
+        ranked.submit(TransferBatch.ANNA, 4, 1, Integer.MIN_VALUE);
+        ranked.submit(TransferBatch.ANNA, 5, 1, 0);
+        List<Mempool.Pending> order = ranked.take(2, 0);
+        assertEquals(5, order.get(0).to);
+        assertEquals(4, order.get(1).to);
+
+        Mempool pool = new Mempool(chain, Mempool.Ordering.PRIORITY, 1_000);
+        long confirmed = Metrics.get().getTransactionsConfirmed();
+        long queued = Metrics.get().getQueueLatency().getCount();
+
+        CompletableFuture<Integer> big = pool.submit(TransferBatch.ANNA, 2, 600);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> pool.submit(TransferBatch.ANNA, 3, 500));
+        assertEquals("Insufficient funds for account 0.", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> pool.submit(2, 3, 1),
+                "Unconfirmed funds cannot be spent");
+        assertThrows(IllegalArgumentException.class, () -> pool.submit(3, 3, 1));
+        CompletableFuture<Integer> urgent = pool.submit(TransferBatch.ANNA, 3, 100, 5);
+        assertEquals(2, pool.size());
+
+        int threads = 4;
+        int perThread = 50;
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        try (BlockProducer producer = new BlockProducer(pool, 16)) {
+            Thread[] submitters = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int account = 10 + t;
+                submitters[t] = new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        CompletableFuture<Integer> f = pool.submit(TransferBatch.ANNA, account, 1);
+                        synchronized (futures) {
+                            futures.add(f);
+                        }
+                    }
+                });
+                submitters[t].start();
+            }
+            for (Thread t : submitters) {
+                t.join();
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(20, TimeUnit.SECONDS);
+            assertEquals(1, urgent.get(5, TimeUnit.SECONDS), "The urgent transfer went first");
+            assertEquals(1, big.get(5, TimeUnit.SECONDS));
+            assertEquals(3, chain.getBlock(1).getTransfers().to(0));
+            assertEquals(threads * perThread + 2, producer.getTransactions());
+            assertTrue(producer.getTransactionsPerSecond() > 0);
+        }
+        for (int t = 0; t < threads; t++) {
+            assertEquals(perThread, chain.getBalance(10 + t));
+        }
+        assertEquals(100, chain.getBalance(TransferBatch.ANNA));
+        assertEquals(600, chain.getBalance(2));
+        assertTrue(chain.isValidBlockChain());
+        assertEquals(threads * perThread + 2, Metrics.get().getTransactionsConfirmed() - confirmed);
+        assertEquals(threads * perThread + 2, Metrics.get().getQueueLatency().getCount() - queued);
+
+        // Spending confirmed funds works once the producer has appended them.
+        assertThrows(IllegalArgumentException.class, () -> pool.submit(2, 3, 601));
+        pool.submit(2, 3, 600);
+    }
 }